@@ -0,0 +1,37 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of character lookup in Alphabet.
+ *  @author Melody Ma
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AlphabetBenchmark {
+
+    /** Alphabet under test. */
+    private Alphabet _alphabet = new Alphabet();
+
+    /** Next character or index to look up. */
+    private int _next;
+
+    @Benchmark
+    public int toInt() {
+        _next = (_next + 7) % 26;
+        return _alphabet.toInt((char) ('A' + _next));
+    }
+
+    @Benchmark
+    public char toChar() {
+        _next = (_next + 7) % 26;
+        return _alphabet.toChar(_next);
+    }
+}
@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of converting many messages with independently set
+ *  machines, one machine at a time and in a MachineBatch.
+ *  @author Melody Ma
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchBenchmark {
+
+    /** Number of machines. */
+    @Param({"64", "1024"})
+    public int machines;
+
+    /** Length of each message. */
+    @Param({"250"})
+    public int length;
+
+    /** Machines converting one at a time. */
+    private Machine[] _machines;
+
+    /** Vectorized batch, if the Vector API is available. */
+    private MachineBatch _batch;
+
+    /** Scalar batch. */
+    private MachineBatch _scalar;
+
+    /** Messages, one per machine. */
+    private String[] _messages;
+
+    @Setup
+    public void setUp() {
+        _machines = new Machine[machines];
+        Machine[] batched = new Machine[machines];
+        Machine[] scalar = new Machine[machines];
+        _messages = new String[machines];
+        for (int k = 0; k < machines; k += 1) {
+            _machines[k] = Fixtures.machine();
+            _machines[k].setRotors(Fixtures.message(4, k));
+            batched[k] = _machines[k].copy();
+            scalar[k] = _machines[k].copy();
+            _messages[k] = Fixtures.message(length, 61 + k);
+        }
+        _batch = MachineBatch.of(batched);
+        _scalar = new MachineBatch(scalar, 1);
+    }
+
+    @Benchmark
+    public String[] machines() {
+        String[] result = new String[machines];
+        for (int k = 0; k < machines; k += 1) {
+            result[k] = _machines[k].convert(_messages[k]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String[] batch() {
+        return _batch.convert(_messages);
+    }
+
+    @Benchmark
+    public String[] scalarBatch() {
+        return _scalar.convert(_messages);
+    }
+}
@@ -0,0 +1,62 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/** Machines and messages shared by the enigma benchmarks.
+ *  @author Melody Ma
+ */
+class Fixtures {
+
+    /** The naval configuration, in the format read by Main. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + "5 3\n"
+        + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) "
+        + "(SZ) (TV)\n";
+
+    /** The settings line used by the benchmarks. */
+    static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a Machine for CONFIG, set up according to SETTINGS. */
+    static Machine machine() {
+        Alphabet alpha = new Alphabet();
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        String[] lines = CONFIG.split("\n");
+        for (int i = 2; i < lines.length; i += 1) {
+            String[] fields = lines[i].split(" ", 3);
+            Permutation perm = new Permutation(fields[2], alpha);
+            char kind = fields[1].charAt(0);
+            if (kind == 'M') {
+                rotors.put(fields[0], new MovingRotor(fields[0], perm,
+                                                      fields[1].substring(1)));
+            } else if (kind == 'N') {
+                rotors.put(fields[0], new FixedRotor(fields[0], perm));
+            } else {
+                rotors.put(fields[0], new Reflector(fields[0], perm));
+            }
+        }
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        Main.setUp(machine, SETTINGS);
+        return machine;
+    }
+
+    /** Return a random message of LENGTH upper-case letters, using
+     *  SEED. */
+    static String message(int length, long seed) {
+        Random random = new Random(seed);
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+}
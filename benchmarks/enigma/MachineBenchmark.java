@@ -0,0 +1,51 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of conversion by a whole Machine.
+ *  @author Melody Ma
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MachineBenchmark {
+
+    /** Length of the message converted by convertString. */
+    @Param({"100", "10000", "1000000"})
+    public int length;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Message converted by convertString. */
+    private String _message;
+
+    /** Next index to convert. */
+    private int _next;
+
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine();
+        _message = Fixtures.message(length, 61);
+    }
+
+    @Benchmark
+    public int convertIndex() {
+        _next = (_next + 7) % 26;
+        return _machine.convert(_next);
+    }
+
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+}
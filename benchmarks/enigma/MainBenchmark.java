@@ -0,0 +1,80 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** End-to-end benchmarks of Main.run on generated input files, with
+ *  streams opened and closed by the benchmark.
+ *  @author Melody Ma
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBenchmark {
+
+    /** Number of settings sections in the input. */
+    @Param({"1", "1000"})
+    public int sections;
+
+    /** Number of characters in each section's message. */
+    @Param({"1000", "100000"})
+    public int messageLength;
+
+    /** Configuration, input and output files. */
+    private Path _config, _input, _output;
+
+    @Setup
+    public void setUp() throws IOException {
+        _config = Files.createTempFile("enigma", ".conf");
+        _input = Files.createTempFile("enigma", ".in");
+        _output = Files.createTempFile("enigma", ".out");
+        Files.writeString(_config, Fixtures.CONFIG);
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < sections; k += 1) {
+            input.append(Fixtures.SETTINGS).append('\n');
+            String msg = Fixtures.message(messageLength, k);
+            for (int i = 0; i < msg.length(); i += 60) {
+                input.append(msg, i, Math.min(msg.length(), i + 60));
+                input.append('\n');
+            }
+        }
+        Files.writeString(_input, input);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_config);
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+    }
+
+    @Benchmark
+    public void process() throws IOException {
+        try (InputStream in = Files.newInputStream(_input);
+             OutputStream out = Files.newOutputStream(_output)) {
+            Main.run(in, out, _config.toString());
+        }
+    }
+
+    @Benchmark
+    public void processMapped() throws IOException {
+        try (OutputStream out = Files.newOutputStream(_output)) {
+            Main.run(InputStream.nullInputStream(), out, "--mapped",
+                     _config.toString(), _input.toString());
+        }
+    }
+}
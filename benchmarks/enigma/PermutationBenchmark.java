@@ -0,0 +1,45 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Permutation lookups.
+ *  @author Melody Ma
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PermutationBenchmark {
+
+    /** Permutation under test (rotor I). */
+    private Permutation _perm =
+        new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+                        new Alphabet());
+
+    /** Next index to permute. */
+    private int _next;
+
+    @Benchmark
+    public int permute() {
+        _next = (_next + 7) % 26;
+        return _perm.permute(_next);
+    }
+
+    @Benchmark
+    public int invert() {
+        _next = (_next + 7) % 26;
+        return _perm.invert(_next);
+    }
+
+    @Benchmark
+    public char permuteChar() {
+        _next = (_next + 7) % 26;
+        return _perm.permute((char) ('A' + _next));
+    }
+}
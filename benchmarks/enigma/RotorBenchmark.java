@@ -0,0 +1,47 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of conversion through a single Rotor.
+ *  @author Melody Ma
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RotorBenchmark {
+
+    /** Rotor under test (a copy of rotor I, as a machine would hold,
+     *  set to Q). */
+    private Rotor _rotor;
+
+    /** Next index to convert. */
+    private int _next;
+
+    @Setup
+    public void setUp() {
+        _rotor = new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            new Alphabet()), "Q").copy();
+        _rotor.set('Q');
+    }
+
+    @Benchmark
+    public int convertForward() {
+        _next = (_next + 7) % 26;
+        return _rotor.convertForward(_next);
+    }
+
+    @Benchmark
+    public int convertBackward() {
+        _next = (_next + 7) % 26;
+        return _rotor.convertBackward(_next);
+    }
+}
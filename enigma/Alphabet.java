@@ -1,30 +1,100 @@
 package enigma;
 
-import java.util.HashMap;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The symbols of an alphabet are
+ *  Unicode code points, and may include supplementary characters (those
+ *  outside the Basic Multilingual Plane, which take two chars in a
+ *  String); the methods taking or returning a char apply only to the
+ *  others.
+ *
+ *  Indices are found through a table indexed directly by code point when
+ *  the alphabet's code points lie close together, and otherwise through
+ *  an open-addressed hash table.  Either way, the indices are stored
+ *  (plus one, so that 0 marks a code point not in the alphabet) in the
+ *  narrowest of byte[], char[] and int[] that can hold them.
  *  @author Melody Ma
  */
 class Alphabet {
-    /** Alphabet. */
-    private HashMap<Integer, Character> _alphabet;
-    /** Alphabet in array form. */
-    private char[] _AlphabetArray;
+    /** Widest range of code points (largest minus smallest) for which
+     *  indices are kept in a table indexed directly by code point. */
+    private static final int MAX_DIRECT_RANGE = 1 << 12;
+
+    /** Number of ASCII characters. */
+    static final int ASCII_SIZE = 128;
+
+    /** Largest alphabet size whose stored indices fit in a byte. */
+    private static final int MAX_BYTE_INDICES = 0xFF;
+
+    /** Largest alphabet size whose stored indices fit in a char. */
+    private static final int MAX_CHAR_INDICES = 0xFFFF;
+
+    /** The code points of the alphabet, in order. */
+    private int[] _symbols;
+
+    /** True iff some symbol is a supplementary code point. */
+    private boolean _supplementary;
+
+    /** True iff indices are found by direct indexing, the stored index
+     *  of code point _offset + K being at slot K. */
+    private boolean _directIndex;
+
+    /** Smallest code point of the alphabet, used with direct indexing. */
+    private int _offset;
+
+    /** Number of slots in the index tables. */
+    private int _slots;
+
+    /** Open-addressed hash table of code points, used when indexing is
+     *  not direct.  Its length is a power of two. */
+    private int[] _keys;
+
+    /** Stored index (index plus one, or 0 for none) at each slot, when
+     *  the alphabet has at most MAX_BYTE_INDICES symbols. */
+    private byte[] _byteIndices;
+
+    /** Stored index at each slot, when the alphabet has more than
+     *  MAX_BYTE_INDICES and at most MAX_CHAR_INDICES symbols. */
+    private char[] _charIndices;
+
+    /** Stored index at each slot, for larger alphabets. */
+    private int[] _intIndices;
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** A new alphabet containing the code points of CHARS. The K-th code
+     *  point has index K (numbering from 0). No character may be
+     *  duplicated. */
     Alphabet(String chars) {
-        _alphabet = new HashMap<Integer, Character>();
-        _AlphabetArray = new char[chars.length()];
-        for (int i = 0; i < chars.length(); i++) {
-            char c = chars.charAt(i);
-            _alphabet.put(i, c);
-            _AlphabetArray[i] = c;
+        _symbols = chars.codePoints().toArray();
+        int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+        for (int c : _symbols) {
+            lo = Math.min(lo, c);
+            hi = Math.max(hi, c);
+            _supplementary |= Character.isSupplementaryCodePoint(c);
         }
-        if (_AlphabetArray.length != _alphabet.size()) {
-            throw error("No character may be duplicated.");
+        if (_symbols.length == 0) {
+            _directIndex = true;
+        } else if (hi - lo < MAX_DIRECT_RANGE) {
+            _directIndex = true;
+            _offset = lo;
+            _slots = hi - lo + 1;
+        } else {
+            _slots = Integer.highestOneBit(_symbols.length) * 4;
+            _keys = new int[_slots];
+        }
+        if (_symbols.length <= MAX_BYTE_INDICES) {
+            _byteIndices = new byte[_slots];
+        } else if (_symbols.length <= MAX_CHAR_INDICES) {
+            _charIndices = new char[_slots];
+        } else {
+            _intIndices = new int[_slots];
+        }
+        for (int i = 0; i < _symbols.length; i++) {
+            if (!add(_symbols[i], i)) {
+                throw error("No character may be duplicated.");
+            }
         }
     }
 
@@ -33,37 +103,151 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return the index stored at SLOT, or -1 if there is none. */
+    private int indexAt(int slot) {
+        if (_byteIndices != null) {
+            return (_byteIndices[slot] & MAX_BYTE_INDICES) - 1;
+        } else if (_charIndices != null) {
+            return _charIndices[slot] - 1;
+        } else {
+            return _intIndices[slot] - 1;
+        }
+    }
+
+    /** Store INDEX at SLOT. */
+    private void setIndexAt(int slot, int index) {
+        if (_byteIndices != null) {
+            _byteIndices[slot] = (byte) (index + 1);
+        } else if (_charIndices != null) {
+            _charIndices[slot] = (char) (index + 1);
+        } else {
+            _intIndices[slot] = index + 1;
+        }
+    }
+
+    /** Record that code point CH has index INDEX.  Returns false if CH
+     *  already has an index. */
+    private boolean add(int ch, int index) {
+        if (_directIndex) {
+            if (indexAt(ch - _offset) >= 0) {
+                return false;
+            }
+            setIndexAt(ch - _offset, index);
+            return true;
+        }
+        int mask = _keys.length - 1;
+        int h = hash(ch) & mask;
+        while (indexAt(h) >= 0) {
+            if (_keys[h] == ch) {
+                return false;
+            }
+            h = (h + 1) & mask;
+        }
+        _keys[h] = ch;
+        setIndexAt(h, index);
+        return true;
+    }
+
+    /** Return the index of code point CH, or -1 if CH is not in this
+     *  alphabet. */
+    private int lookup(int ch) {
+        if (_directIndex) {
+            int k = ch - _offset;
+            return k >= 0 && k < _slots ? indexAt(k) : -1;
+        }
+        int mask = _keys.length - 1;
+        int h = hash(ch) & mask;
+        for (int index = indexAt(h); index >= 0; index = indexAt(h)) {
+            if (_keys[h] == ch) {
+                return index;
+            }
+            h = (h + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Return a well-mixed hash of CH. */
+    private static int hash(int ch) {
+        int h = ch * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return _alphabet.size();
+        return _symbols.length;
+    }
+
+    /** Returns true iff some character of this alphabet is a
+     *  supplementary code point, which a char cannot hold. */
+    boolean hasSupplementary() {
+        return _supplementary;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _alphabet.containsValue(ch);
+        return lookup(ch) >= 0;
+    }
+
+    /** Returns true if code point CH is in this alphabet. */
+    boolean containsCodePoint(int ch) {
+        return lookup(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size(), which must not be a supplementary code
+     *  point. */
     char toChar(int index) {
-        if (index < 0 || index > size()) {
+        int ch = toCodePoint(index);
+        if (ch > Character.MAX_VALUE) {
+            throw error("Character does not fit in a char.");
+        }
+        return (char) ch;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (index < 0 || index >= size()) {
             throw error("Index is out of bound.");
         }
-        return _alphabet.get(index);
+        return _symbols[index];
+    }
+
+    /** Returns a table of 128 entries giving the index of each ASCII
+     *  character in this alphabet, or -1 for characters not in it.  All
+     *  characters of the alphabet must be ASCII. */
+    int[] asciiIndices() {
+        int[] result = new int[ASCII_SIZE];
+        Arrays.fill(result, -1);
+        for (int i = 0; i < _symbols.length; i++) {
+            if (_symbols[i] >= ASCII_SIZE) {
+                throw error("Alphabet is not ASCII.");
+            }
+            result[_symbols[i]] = i;
+        }
+        return result;
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!contains(ch)) {
+        return codePointToInt(ch);
+    }
+
+    /** Returns the index of code point CH, which must be in the
+     *  alphabet.  This is the inverse of toCodePoint(). */
+    int codePointToInt(int ch) {
+        int index = lookup(ch);
+        if (index < 0) {
             throw error("Character is not in the alphabet.");
         }
-        for (int i = 0; i < size(); i++) {
-            if (_alphabet.get(i) == ch) {
-                return i;
-            }
-        }
-        return 0;
+        return index;
+    }
+
+    /** Returns my characters as a String. */
+    @Override
+    public String toString() {
+        return new String(_symbols, 0, _symbols.length);
     }
 
 }
@@ -34,4 +34,52 @@ public class AlphabetTest {
         Alphabet alphabet = new Alphabet(input);
         assertEquals(0, alphabet.toInt('A'));
     }
+
+    @Test(expected = EnigmaException.class)
+    public void duplicateTest() {
+        new Alphabet("ABCA");
+    }
+
+    @Test
+    public void sparseTest() {
+        String input = "A\u4e2d\uffefz0";
+        Alphabet alphabet = new Alphabet(input);
+        for (int i = 0; i < input.length(); i++) {
+            assertEquals(i, alphabet.toInt(input.charAt(i)));
+            assertEquals(input.charAt(i), alphabet.toChar(i));
+        }
+        assertFalse(alphabet.contains('B'));
+    }
+
+    @Test
+    public void supplementaryTest() {
+        String input = "A\ud83d\ude00B\ud800\udf48";
+        Alphabet alphabet = new Alphabet(input);
+        assertEquals(4, alphabet.size());
+        assertTrue(alphabet.hasSupplementary());
+        assertEquals(1, alphabet.codePointToInt(0x1F600));
+        assertEquals(0x10348, alphabet.toCodePoint(3));
+        assertEquals('B', alphabet.toChar(2));
+        assertFalse(alphabet.contains('\ud83d'));
+        assertEquals(input, alphabet.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void supplementaryToCharTest() {
+        new Alphabet("A\ud83d\ude00").toChar(1);
+    }
+
+    @Test
+    public void largeTest() {
+        StringBuilder input = new StringBuilder();
+        for (int c = 0x4e00; c < 0x4e00 + 70000; c += 1) {
+            input.appendCodePoint(c < 0xd800 ? c : c + 0x10000);
+        }
+        Alphabet alphabet = new Alphabet(input.toString());
+        assertEquals(70000, alphabet.size());
+        for (int i = 0; i < alphabet.size(); i += 997) {
+            assertEquals(i, alphabet.codePointToInt(alphabet.toCodePoint(i)));
+        }
+        assertFalse(alphabet.containsCodePoint('A'));
+    }
 }
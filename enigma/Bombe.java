@@ -0,0 +1,334 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A Turing-Welchman bombe: finds the rotor orders and settings under
+ *  which a crib (known plaintext) at a given offset in a ciphertext is
+ *  consistent with some plugboard.
+ *
+ *  The crib and ciphertext form a menu: a graph on the letters of the
+ *  alphabet with an edge between each crib letter and the ciphertext
+ *  letter below it, labelled with its position.  At each key, a
+ *  hypothesis "letter T is steckered to S", for the most connected menu
+ *  letter T, is propagated through the menu: if A is steckered to X and
+ *  A-B is an edge at position P, then B is steckered to the image of X
+ *  under the plugboard-free scrambler at P; steckering is also
+ *  symmetric (the diagonal board).  A hypothesis survives if no letter
+ *  ends up steckered to two different letters, and each surviving
+ *  hypothesis is reported as a stop.  The scramblers at the menu
+ *  positions are tabulated once per rotor setting reached, being
+ *  carried over from one key to the next where the settings overlap,
+ *  and rotor orders are processed in parallel on a fork-join pool.
+ *  @author Melody Ma
+ */
+class Bombe {
+
+    /** A bombe for the keys of MACHINE (whose available rotors and
+     *  alphabet are used), running on POOL. */
+    Bombe(Machine machine, ForkJoinPool pool) {
+        _machine = machine.copy();
+        _keys = new KeySpace(machine);
+        _pool = pool;
+        _size = machine.alphabet().size();
+    }
+
+    /** Return the stops for CRIB, which is the plaintext of the
+     *  characters of CIPHERTEXT starting at OFFSET, in order of rotor
+     *  order and rotor setting. */
+    List<Stop> run(String ciphertext, String crib, int offset) {
+        Alphabet alpha = _machine.alphabet();
+        if (offset < 0 || offset + crib.length() > ciphertext.length()) {
+            throw error("Crib does not fit the ciphertext.");
+        }
+        int n = crib.length();
+        int[] from = new int[n], to = new int[n];
+        int[] degree = new int[_size];
+        for (int i = 0; i < n; i += 1) {
+            from[i] = alpha.toInt(crib.charAt(i));
+            to[i] = alpha.toInt(ciphertext.charAt(offset + i));
+            degree[from[i]] += 1;
+            degree[to[i]] += 1;
+        }
+        int test = 0;
+        for (int c = 1; c < _size; c += 1) {
+            if (degree[c] > degree[test]) {
+                test = c;
+            }
+        }
+        Menu menu = new Menu(from, to, offset, test);
+        List<Stop> result = new ArrayList<>();
+        if (_keys.numOrders() > 0 && n > 0) {
+            result = _pool.invoke(new OrderTask(menu, 0, _keys.numOrders()));
+        }
+        return result;
+    }
+
+    /** Return the stops for MENU among the settings of rotor order
+     *  ORDER.  Runs in the calling thread.  Consecutive settings usually
+     *  differ by one keystroke, in which case the scramblers at the menu
+     *  positions of a setting are those of the previous one shifted by
+     *  one position, and only the scrambler at the last position is
+     *  tabulated afresh. */
+    List<Stop> runOrder(Menu menu, int order) {
+        Machine machine = _machine.copy();
+        machine.insertRotors(_keys.order(order));
+        Machine probe = machine.copy();
+        int n = menu._from.length;
+        int[][] scramblers = new int[n][_size];
+        int[] setting = new int[machine.numRotors() - 1];
+        int[] shifted = null;
+        Propagator prop = new Propagator(menu, scramblers);
+        List<Stop> stops = new ArrayList<>();
+        for (long k = 0; k < _keys.numSettings(); k += 1) {
+            probe.setRotors(setting);
+            int[] start = probe.positionsAfter(menu._offset + 1);
+            if (Arrays.equals(shifted, start)) {
+                int[] oldest = scramblers[0];
+                System.arraycopy(scramblers, 1, scramblers, 0, n - 1);
+                scramblers[n - 1] = oldest;
+                machine.advanceRotors();
+                machine.scramblerTable(oldest);
+            } else {
+                machine.setRotors(setting);
+                machine.seek(menu._offset);
+                for (int i = 0; i < n; i += 1) {
+                    machine.advanceRotors();
+                    machine.scramblerTable(scramblers[i]);
+                }
+            }
+            shifted = probe.positionsAfter(menu._offset + 2);
+            for (int s = 0; s < _size; s += 1) {
+                if (prop.consistent(s)) {
+                    stops.add(new Stop(_keys.order(order),
+                                       settingString(setting),
+                                       prop.steckers()));
+                }
+            }
+            _keys.next(setting);
+        }
+        return stops;
+    }
+
+    /** Return the setting string for setting indices SETTING. */
+    private String settingString(int[] setting) {
+        char[] result = new char[setting.length];
+        for (int i = 0; i < setting.length; i += 1) {
+            result[i] = _machine.alphabet().toChar(setting[i]);
+        }
+        return new String(result);
+    }
+
+    /** The menu for a crib. */
+    static class Menu {
+        /** A menu whose I-th edge joins FROM[I] and TO[I] at position
+         *  OFFSET + I, with test letter TEST. */
+        Menu(int[] from, int[] to, int offset, int test) {
+            _from = from;
+            _to = to;
+            _offset = offset;
+            _test = test;
+        }
+
+        /** Ends of each edge. */
+        private final int[] _from, _to;
+        /** Position of the first edge. */
+        private final int _offset;
+        /** Letter whose steckering is hypothesized. */
+        private final int _test;
+    }
+
+    /** Tests stecker hypotheses against a menu, reusing its storage from
+     *  one hypothesis to the next. */
+    private class Propagator {
+
+        /** A propagator for MENU, where SCRAMBLERS[I] is (to be filled
+         *  with) the scrambler at the position of edge I. */
+        Propagator(Menu menu, int[][] scramblers) {
+            _menu = menu;
+            _scramblers = scramblers;
+            _partner = new int[_size];
+            _queue = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _partner[c] = -1;
+            }
+            int[] count = new int[_size];
+            for (int i = 0; i < menu._from.length; i += 1) {
+                count[menu._from[i]] += 1;
+                count[menu._to[i]] += 1;
+            }
+            _edges = new int[_size][];
+            for (int c = 0; c < _size; c += 1) {
+                _edges[c] = new int[count[c]];
+                count[c] = 0;
+            }
+            for (int i = 0; i < menu._from.length; i += 1) {
+                _edges[menu._from[i]][count[menu._from[i]]++] = i;
+                _edges[menu._to[i]][count[menu._to[i]]++] = i;
+            }
+        }
+
+        /** Return true iff the hypothesis that the test letter is
+         *  steckered to S leads to no contradiction.  Afterwards,
+         *  steckers() describes the deduced steckering. */
+        boolean consistent(int s) {
+            for (int c = 0; c < _size; c += 1) {
+                _partner[c] = -1;
+            }
+            _head = _tail = 0;
+            if (!assume(_menu._test, s)) {
+                return false;
+            }
+            while (_head < _tail) {
+                int a = _queue[_head++];
+                int x = _partner[a];
+                for (int i : _edges[a]) {
+                    int b = _menu._from[i] == a ? _menu._to[i]
+                        : _menu._from[i];
+                    if (!assume(b, _scramblers[i][x])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that A is steckered to X, and so X to A.  Returns false
+         *  if either already has a different partner. */
+        private boolean assume(int a, int x) {
+            return assumeOne(a, x) && assumeOne(x, a);
+        }
+
+        /** Record that A is steckered to X, returning false if A already
+         *  has a different partner. */
+        private boolean assumeOne(int a, int x) {
+            if (_partner[a] == x) {
+                return true;
+            } else if (_partner[a] >= 0) {
+                return false;
+            }
+            _partner[a] = x;
+            _queue[_tail++] = a;
+            return true;
+        }
+
+        /** Return the steckering deduced by the last consistent
+         *  hypothesis, in cycle notation. */
+        String steckers() {
+            StringBuilder result = new StringBuilder();
+            Alphabet alpha = _machine.alphabet();
+            for (int c = 0; c < _size; c += 1) {
+                if (_partner[c] > c) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(alpha.toChar(c))
+                        .append(alpha.toChar(_partner[c])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** The menu. */
+        private final Menu _menu;
+        /** Scrambler at each edge's position. */
+        private final int[][] _scramblers;
+        /** Edges at each letter. */
+        private final int[][] _edges;
+        /** Deduced partner of each letter, or -1. */
+        private final int[] _partner;
+        /** Letters whose consequences are yet to be propagated. */
+        private final int[] _queue;
+        /** Bounds of the unprocessed part of _queue. */
+        private int _head, _tail;
+    }
+
+    /** A surviving key and the steckering deduced for it. */
+    static class Stop {
+
+        /** A stop at rotor order ORDER (reflector first) and rotor setting
+         *  SETTING, with deduced plugboard pairs STECKERS. */
+        Stop(String[] order, String setting, String steckers) {
+            _order = order;
+            _setting = setting;
+            _steckers = steckers;
+        }
+
+        /** Return my rotor order, reflector first. */
+        String[] order() {
+            return _order.clone();
+        }
+
+        /** Return my rotor setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs deduced at this stop, in cycle
+         *  notation.  Letters mapped to themselves are not shown. */
+        String steckers() {
+            return _steckers;
+        }
+
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _order) + " " + _setting
+                + " " + _steckers;
+        }
+
+        /** My rotor order. */
+        private final String[] _order;
+        /** My rotor setting. */
+        private final String _setting;
+        /** Deduced plugboard pairs. */
+        private final String _steckers;
+    }
+
+    /** Task running the bombe on a range of rotor orders. */
+    private class OrderTask extends RecursiveTask<List<Stop>> {
+
+        /** A task for MENU on rotor orders FIRST up to (not including)
+         *  LAST. */
+        OrderTask(Menu menu, int first, int last) {
+            _menu = menu;
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_last - _first == 1) {
+                return runOrder(_menu, _first);
+            }
+            int mid = (_first + _last) / 2;
+            OrderTask left = new OrderTask(_menu, _first, mid);
+            left.fork();
+            List<Stop> right = new OrderTask(_menu, mid, _last).compute();
+            List<Stop> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+        /** The menu. */
+        private final Menu _menu;
+        /** Range of rotor orders. */
+        private final int _first, _last;
+    }
+
+    /** Template machine supplying the alphabet and rotors. */
+    private final Machine _machine;
+
+    /** Keys tested. */
+    private final KeySpace _keys;
+
+    /** Pool running the bombe. */
+    private final ForkJoinPool _pool;
+
+    /** Alphabet size. */
+    private final int _size;
+}
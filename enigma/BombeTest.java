@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.*;
+import static enigma.CoincidenceSearchTest.PLAIN;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Melody Ma
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkStops() {
+        String[] order = {"B", "III", "V"};
+        String plugs = "(AF) (TX) (LQ) (MR)";
+        Machine machine = navalMachine(3, 2, order, "QW", plugs);
+        String cipher = machine.convert(PLAIN);
+        Bombe bombe = new Bombe(machine, new ForkJoinPool(2));
+        List<Bombe.Stop> stops = bombe.run(cipher, PLAIN.substring(20, 50),
+                                           20);
+        assertTrue(stops.size() < 20);
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            if (Arrays.equals(order, stop.order())
+                && stop.setting().equals("QW")) {
+                found = true;
+                for (String pair : stop.steckers().split(" ")) {
+                    assertTrue(pair, plugs.contains(pair));
+                }
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void checkStopsAtOffsets() {
+        String[] order = {"B", "I", "II"};
+        String plugs = "(AF) (TX)";
+        Machine machine = navalMachine(3, 2, order, "DN", plugs);
+        String cipher = machine.convert(PLAIN);
+        Bombe bombe = new Bombe(machine, new ForkJoinPool(2));
+        for (int offset : new int[] {0, 3, 31}) {
+            boolean found = false;
+            for (Bombe.Stop stop
+                     : bombe.run(cipher, PLAIN.substring(offset, offset + 25),
+                                 offset)) {
+                found |= Arrays.equals(order, stop.order())
+                    && stop.setting().equals("DN");
+            }
+            assertTrue("offset " + offset, found);
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the rotor order and rotor settings of a
+ *  message, assuming an empty plugboard.  Every key in the KeySpace of a
+ *  machine is tried by decrypting the message and scoring the result by
+ *  its index of coincidence, and the best-scoring keys are kept.  Work is
+ *  divided among the threads of a fork-join pool, each of which uses its
+ *  own copies of the rotors (sharing their conversion tables) and reuses
+ *  its buffers from one trial to the next.
+ *  @author Melody Ma
+ */
+class CoincidenceSearch {
+
+    /** A search of the keys of MACHINE (whose available rotors and
+     *  alphabet are used) keeping the best TOPK results and running on
+     *  POOL.  TOPK must be positive. */
+    CoincidenceSearch(Machine machine, int topK, ForkJoinPool pool) {
+        if (topK < 1) {
+            throw error("at least one search result must be kept");
+        }
+        _machine = machine.copy();
+        _keys = new KeySpace(machine);
+        _topK = topK;
+        _pool = pool;
+        _settingsPerUnit = _keys.numSettings()
+            / machine.alphabet().size();
+    }
+
+    /** Return my key space. */
+    KeySpace keys() {
+        return _keys;
+    }
+
+    /** Return the best results for CIPHERTEXT, best first.  Blanks in
+     *  CIPHERTEXT are ignored. */
+    List<Result> search(String ciphertext) {
+        int[] text = indices(ciphertext);
+        long units = numUnits();
+        if (units == 0) {
+            return new ArrayList<>();
+        }
+        return _pool.invoke(new SearchTask(text, 0, units)).sorted();
+    }
+
+    /** Return the number of work units into which my key space is
+     *  divided.  Unit U covers rotor order U / alphabet size, with the
+     *  settings whose leftmost rotor is at index U % alphabet size. */
+    long numUnits() {
+        return (long) _keys.numOrders() * _machine.alphabet().size();
+    }
+
+    /** Return the best results in work unit UNIT (see numUnits) for the
+     *  ciphertext TEXT given as alphabet indices.  Runs in the calling
+     *  thread. */
+    TopResults searchUnit(int[] text, long unit) {
+        int size = _machine.alphabet().size();
+        long start = (unit % size) * _settingsPerUnit;
+        return searchRange(text, (int) (unit / size), start,
+                           start + _settingsPerUnit);
+    }
+
+    /** Return the best results among rotor order ORDER with rotor settings
+     *  numbered FIRST up to (not including) LAST, for the ciphertext
+     *  TEXT given as alphabet indices.  Runs in the calling thread. */
+    TopResults searchRange(int[] text, int order, long first, long last) {
+        Machine machine = _machine.copy();
+        machine.insertRotors(_keys.order(order));
+        machine.setPlugboard(new Permutation("", machine.alphabet()));
+        machine.useCompositeTable(true);
+        TopResults results = new TopResults(_topK);
+        int[] setting = new int[machine.numRotors() - 1];
+        int[] plain = new int[text.length];
+        int[] counts = new int[machine.alphabet().size()];
+        _keys.setting(first, setting);
+        for (long k = first; k < last; k += 1, _keys.next(setting)) {
+            machine.setRotors(setting);
+            machine.convert(text, 0, plain, 0, text.length);
+            double score = coincidence(plain, counts);
+            if (results.wants(score)) {
+                results.add(new Result(_keys.order(order),
+                                       settingString(setting), score));
+            }
+        }
+        return results;
+    }
+
+    /** Return the alphabet indices of the non-blank characters of TEXT. */
+    int[] indices(String text) {
+        Alphabet alpha = _machine.alphabet();
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                result[n] = alpha.toInt(text.charAt(i));
+                n += 1;
+            }
+        }
+        if (n < 2) {
+            throw error("Ciphertext is too short.");
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** Return the index of coincidence of TEXT, using COUNTS (one entry
+     *  per alphabet character) as scratch space. */
+    static double coincidence(int[] text, int[] counts) {
+        for (int i = 0; i < counts.length; i += 1) {
+            counts[i] = 0;
+        }
+        for (int c : text) {
+            counts[c] += 1;
+        }
+        long sum = 0;
+        for (int n : counts) {
+            sum += (long) n * (n - 1);
+        }
+        return (double) sum / ((double) text.length * (text.length - 1));
+    }
+
+    /** Return the setting string for setting indices SETTING. */
+    private String settingString(int[] setting) {
+        char[] result = new char[setting.length];
+        for (int i = 0; i < setting.length; i += 1) {
+            result[i] = _machine.alphabet().toChar(setting[i]);
+        }
+        return new String(result);
+    }
+
+    /** A key and the score of the decryption it gives. */
+    static class Result implements Comparable<Result> {
+
+        /** A result for rotor order ORDER (reflector first) at rotor
+         *  setting SETTING, scoring SCORE. */
+        Result(String[] order, String setting, double score) {
+            _order = order;
+            _setting = setting;
+            _score = score;
+        }
+
+        /** Return my rotor order, reflector first. */
+        String[] order() {
+            return _order.clone();
+        }
+
+        /** Return my rotor setting, as for Machine.setRotors(String). */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the settings line (without plugboard) for my key. */
+        String settingsLine() {
+            return "* " + String.join(" ", _order) + " " + _setting;
+        }
+
+        @Override
+        public int compareTo(Result other) {
+            return Double.compare(_score, other._score);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.6f", settingsLine(), _score);
+        }
+
+        /** My rotor order. */
+        private final String[] _order;
+        /** My rotor setting. */
+        private final String _setting;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** A bounded collection of the best results seen so far. */
+    static class TopResults {
+
+        /** An empty collection keeping at most LIMIT results. */
+        TopResults(int limit) {
+            _limit = limit;
+            _heap = new PriorityQueue<>(limit + 1);
+        }
+
+        /** Return true iff a result scoring SCORE would be kept. */
+        boolean wants(double score) {
+            return _heap.size() < _limit || score > _heap.peek().score();
+        }
+
+        /** Add RESULT, discarding the worst result if there are too
+         *  many. */
+        void add(Result result) {
+            _heap.add(result);
+            if (_heap.size() > _limit) {
+                _heap.poll();
+            }
+        }
+
+        /** Add all of OTHER's results to me, returning me. */
+        TopResults merge(TopResults other) {
+            for (Result result : other._heap) {
+                if (wants(result.score())) {
+                    add(result);
+                }
+            }
+            return this;
+        }
+
+        /** Return my results, best first. */
+        List<Result> sorted() {
+            List<Result> result = new ArrayList<>(_heap);
+            result.sort(Collections.reverseOrder());
+            return result;
+        }
+
+        /** Greatest number of results kept. */
+        private final int _limit;
+        /** The results kept, worst first. */
+        private final PriorityQueue<Result> _heap;
+    }
+
+    /** Task searching a range of work units (see numUnits). */
+    private class SearchTask extends RecursiveTask<TopResults> {
+
+        /** A task searching units FIRST up to (not including) LAST for
+         *  ciphertext TEXT. */
+        SearchTask(int[] text, long first, long last) {
+            _text = text;
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected TopResults compute() {
+            if (_last - _first == 1) {
+                return searchUnit(_text, _first);
+            }
+            long mid = (_first + _last) / 2;
+            SearchTask left = new SearchTask(_text, _first, mid);
+            left.fork();
+            TopResults right = new SearchTask(_text, mid, _last).compute();
+            return right.merge(left.join());
+        }
+
+        /** Ciphertext indices. */
+        private final int[] _text;
+        /** Range of units searched. */
+        private final long _first, _last;
+    }
+
+    /** Template machine supplying the alphabet and rotors. */
+    private final Machine _machine;
+
+    /** Keys searched. */
+    private final KeySpace _keys;
+
+    /** Number of results kept. */
+    private final int _topK;
+
+    /** Pool running the search. */
+    private final ForkJoinPool _pool;
+
+    /** Number of rotor settings in one work unit. */
+    private final long _settingsPerUnit;
+}
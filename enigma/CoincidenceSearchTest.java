@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the CoincidenceSearch class.
+ *  @author Melody Ma
+ */
+public class CoincidenceSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** English text used as the plaintext of test messages. */
+    static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+        + "FOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLED"
+        + "THEJOINTSANDHINGESTILLITLOOKEDALLSQUARESANDOBLONGSLIKEA"
+        + "COMPLICATEDFIGUREINTHESECONDBOOKOFEUCLIDTHISHEPERCHEDUPON"
+        + "ATRIPODCROUCHEDBENEATHITSDUSKYCOVERSTRETCHEDHISHANDENFORCING"
+        + "SILENCESAIDBESOGOODASTOBESTILLINTHEIRSAPPROPRIATEPOSITIONS";
+
+    @Test
+    public void checkKeySpace() {
+        Machine machine = navalMachine(5, 3,
+                                       new String[] {"B", "Beta", "III",
+                                                     "IV", "I"},
+                                       "AXLE", "");
+        KeySpace keys = new KeySpace(machine);
+        assertEquals(2 * 2 * 8 * 7 * 6, keys.numOrders());
+        assertEquals(26 * 26 * 26 * 26, keys.numSettings());
+        int[] setting = new int[4];
+        keys.setting(26 * 26 * 26 * 3 + 25, setting);
+        assertArrayEquals(new int[] {3, 0, 0, 25}, setting);
+        keys.next(setting);
+        assertArrayEquals(new int[] {3, 0, 1, 0}, setting);
+    }
+
+    @Test
+    public void checkSearch() {
+        String[] order = {"C", "VII", "II"};
+        Machine machine = navalMachine(3, 2, order, "KD", "");
+        String cipher = machine.convert(PLAIN);
+        CoincidenceSearch search =
+            new CoincidenceSearch(machine, 5, new ForkJoinPool(2));
+        List<CoincidenceSearch.Result> best = search.search(cipher);
+        assertEquals(5, best.size());
+        assertArrayEquals(order, best.get(0).order());
+        assertEquals("KD", best.get(0).setting());
+        assertTrue(best.get(0).score() >= best.get(1).score());
+    }
+
+    @Test
+    public void checkUnits() {
+        String[] order = {"B", "IV", "VIII"};
+        Machine machine = navalMachine(3, 2, order, "QA", "");
+        String cipher = machine.convert(PLAIN);
+        CoincidenceSearch search =
+            new CoincidenceSearch(machine, 3, new ForkJoinPool(2));
+        int[] text = search.indices(cipher);
+        CoincidenceSearch.TopResults merged =
+            new CoincidenceSearch.TopResults(3);
+        for (long unit = search.numUnits() - 1; unit >= 0; unit -= 1) {
+            merged.merge(search.searchUnit(text, unit));
+        }
+        List<CoincidenceSearch.Result> best = search.search(cipher);
+        assertEquals(best.get(0).settingsLine(),
+                     merged.sorted().get(0).settingsLine());
+        assertEquals("* B IV VIII QA", best.get(0).settingsLine());
+        for (int k = 0; k < best.size(); k += 1) {
+            assertEquals(best.get(k).score(),
+                         merged.sorted().get(k).score(), 0.0);
+        }
+    }
+
+    @Test
+    public void checkTopKLimits() {
+        Machine machine = navalMachine(3, 2, new String[] {"B", "I", "II"},
+                                       "AA", "");
+        for (int topK : new int[] {0, -1}) {
+            try {
+                new CoincidenceSearch(machine, topK, new ForkJoinPool(1));
+                fail("search accepted " + topK + " results");
+            } catch (EnigmaException excp) {
+                assertEquals("at least one search result must be kept",
+                             excp.getMessage());
+            }
+            try {
+                new SearchCoordinator(machine.configuration(), "unused", 1,
+                                      topK);
+                fail("coordinator accepted " + topK + " results");
+            } catch (EnigmaException excp) {
+                assertEquals("at least one search result must be kept",
+                             excp.getMessage());
+            }
+        }
+    }
+
+}
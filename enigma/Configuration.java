@@ -0,0 +1,373 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** The description of a kind of Enigma machine: its alphabet, its
+ *  numbers of rotor slots and pawls, and the rotors available for it.
+ *  The description itself is immutable, but a configuration also holds
+ *  bounded least-recently-used caches of parsed settings lines and of
+ *  period tables.  The caches are synchronized, so a configuration may
+ *  still be shared freely among threads and among the machines built
+ *  from it.  Its rotors serve only as templates: a
+ *  machine inserts copies of them, which share their conversion tables
+ *  but have settings of their own, so the templates' settings are never
+ *  used or changed.
+ *
+ *  A configuration can be compiled into a binary file, which load reads
+ *  back by memory-mapping it and copying out the permutation tables of
+ *  its rotors, with none of the parsing of a textual configuration.  The
+ *  file consists of little-endian 32-bit integers: FILE_MAGIC,
+ *  FILE_VERSION, the alphabet size N and the code point of each
+ *  alphabet character, the numbers of rotor slots and pawls, the number
+ *  of rotors, and then for each rotor its kind (REFLECTOR, FIXED or
+ *  MOVING), the length and code points of its name, the length and code
+ *  points of its notches, and the N entries of its permutation followed
+ *  by the N entries of the inverse permutation.
+ *  @author Melody Ma
+ */
+class Configuration {
+
+    /** Number identifying a compiled configuration file.  Its first byte
+     *  in the file, 0x89, cannot begin a textual configuration. */
+    static final int FILE_MAGIC = 0x434E4589;
+
+    /** Version of the compiled configuration format. */
+    static final int FILE_VERSION = 1;
+
+    /** Codes for the kinds of rotor in a compiled configuration. */
+    static final int REFLECTOR = 0, FIXED = 1, MOVING = 2;
+
+    /** A configuration with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  0 <= PAWLS < NUMROTORS pawls, and the rotors in ALLROTORS (which
+     *  is copied) available.  The rotors themselves become my templates,
+     *  and should not be set or used elsewhere. */
+    Configuration(Alphabet alpha, int numRotors, int pawls,
+                  Map<String, Rotor> allRotors) {
+        if (numRotors <= 1 || pawls < 0 || pawls >= numRotors) {
+            throw error("bad numbers of rotors and pawls");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _allRotors = Collections.unmodifiableMap(new HashMap<>(allRotors));
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the available rotors, by name.  These are templates, to
+     *  be inspected or copied rather than set. */
+    Map<String, Rotor> rotors() {
+        return _allRotors;
+    }
+
+    /** Return a new copy, in its 0 setting, of the rotor named NAME. */
+    Rotor newRotor(String name) {
+        Rotor template = _allRotors.get(name);
+        if (template == null) {
+            throw error("No such Rotor.");
+        }
+        return template.copy();
+    }
+
+    /** Return the parsed form of the settings line LINE for my machines.
+     *  The most recently used lines are kept, so that a line that recurs
+     *  is parsed only once; trailing blanks, which do not change the
+     *  meaning of a line, are ignored in looking it up. */
+    SettingsLine settingsLine(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ') {
+            end -= 1;
+        }
+        String key = line.substring(0, end);
+        synchronized (_settingsLines) {
+            SettingsLine result = _settingsLines.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        SettingsLine result = new SettingsLine(this, key);
+        synchronized (_settingsLines) {
+            _settingsLines.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return the PeriodTable for the rotors of MACHINE, one of mine,
+     *  from their current settings, or null if it would be too large or
+     *  those rotors and settings have not been asked for before.  Since
+     *  building a table costs about as much as converting as many
+     *  characters as it has rows, a table is built only on the second
+     *  request; the most recently used tables, including the knowledge
+     *  that one is too large, are kept for reuse by all my machines. */
+    PeriodTable periodTable(Machine machine) {
+        machine.syncRotors();
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < machine.numRotors(); i += 1) {
+            Rotor rotor = machine.rotor(i);
+            key.append(rotor.name()).append(' ').append(rotor.setting())
+                .append(' ');
+        }
+        String name = key.toString();
+        synchronized (_periodTables) {
+            if (_periodTables.containsKey(name)) {
+                return _periodTables.get(name);
+            } else if (_periodRequests.put(name, true) == null) {
+                return null;
+            }
+            _periodRequests.remove(name);
+        }
+        PeriodTable table = PeriodTable.build(machine);
+        synchronized (_periodTables) {
+            _periodTables.put(name, table);
+        }
+        return table;
+    }
+
+    /** Return a new machine of my kind, with no rotors inserted. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Return true iff FILE begins like a compiled configuration (and so
+     *  should be read with load rather than parsed as text). */
+    static boolean isCompiled(Path file) {
+        try (FileChannel in = FileChannel.open(file,
+                                               StandardOpenOption.READ)) {
+            ByteBuffer start =
+                ByteBuffer.allocate(Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            while (start.hasRemaining() && in.read(start) >= 0) {
+                continue;
+            }
+            return !start.hasRemaining() && start.getInt(0) == FILE_MAGIC;
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the configuration compiled into the file FILE. */
+    static Configuration load(Path file) {
+        try (FileChannel in = FileChannel.open(file,
+                                               StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE
+                || in.size() % Integer.BYTES != 0) {
+                throw error("%s is not a compiled configuration", file);
+            }
+            IntBuffer data =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size())
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (data.remaining() < 2 || data.get() != FILE_MAGIC) {
+                throw error("%s is not a compiled configuration", file);
+            }
+            if (data.get() != FILE_VERSION) {
+                throw error("%s was compiled for another version", file);
+            }
+            Alphabet alpha = new Alphabet(getString(data));
+            int numRotors = data.get();
+            int pawls = data.get();
+            int count = getCount(data, 3 + 2L * alpha.size());
+            HashMap<String, Rotor> rotors = new HashMap<>();
+            for (int k = 0; k < count; k += 1) {
+                Rotor rotor = getRotor(data, alpha);
+                rotors.put(rotor.name(), rotor);
+            }
+            if (data.hasRemaining() || rotors.size() != count) {
+                throw error("%s is a corrupt configuration", file);
+            }
+            return new Configuration(alpha, numRotors, pawls, rotors);
+        } catch (BufferUnderflowException | NegativeArraySizeException
+                 | IndexOutOfBoundsException | IllegalArgumentException excp) {
+            throw error("%s is a corrupt configuration", file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the string stored at the current position of DATA as a
+     *  length followed by code points. */
+    private static String getString(IntBuffer data) {
+        int[] result = new int[getCount(data, 1)];
+        data.get(result);
+        return new String(result, 0, result.length);
+    }
+
+    /** Return the count stored at the current position of DATA, of
+     *  items that each take at least PERITEM ints of DATA.  Throws
+     *  BufferUnderflowException, reported by load as corruption, if the
+     *  count is negative or too large for what remains of DATA, so that
+     *  nothing is allocated for a corrupt count. */
+    private static int getCount(IntBuffer data, long perItem) {
+        int count = data.get();
+        if (count < 0 || count * perItem > data.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /** Return the rotor on ALPHA stored at the current position of
+     *  DATA. */
+    private static Rotor getRotor(IntBuffer data, Alphabet alpha) {
+        int kind = data.get();
+        String name = getString(data);
+        String notches = getString(data);
+        if (data.remaining() < 2L * alpha.size()) {
+            throw new BufferUnderflowException();
+        }
+        int[] forward = new int[alpha.size()];
+        int[] inverse = new int[alpha.size()];
+        data.get(forward);
+        data.get(inverse);
+        Permutation perm = new Permutation(forward, inverse, alpha);
+        switch (kind) {
+        case REFLECTOR:
+            return new Reflector(name, perm);
+        case FIXED:
+            return new FixedRotor(name, perm);
+        case MOVING:
+            return new MovingRotor(name, perm, notches);
+        default:
+            throw error("bad rotor kind in compiled configuration");
+        }
+    }
+
+    /** Compile me into the file FILE, in the form read by load. */
+    void save(Path file) {
+        int size = _alphabet.size();
+        long length = 6 + size;
+        for (Rotor rotor : _allRotors.values()) {
+            length += 3 + codePoints(rotor.name())
+                + codePoints(notches(rotor)) + 2 * size;
+        }
+        if (length * Integer.BYTES > Integer.MAX_VALUE) {
+            throw error("configuration is too large to compile");
+        }
+        ByteBuffer bytes =
+            ByteBuffer.allocate((int) length * Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer data = bytes.asIntBuffer();
+        data.put(FILE_MAGIC).put(FILE_VERSION);
+        putString(data, _alphabet.toString());
+        data.put(_numRotors).put(_pawls).put(_allRotors.size());
+        for (Rotor rotor : _allRotors.values()) {
+            data.put(rotor.reflecting() ? REFLECTOR
+                     : rotor.rotates() ? MOVING : FIXED);
+            putString(data, rotor.name());
+            putString(data, notches(rotor));
+            Permutation perm = rotor.permutation();
+            for (int i = 0; i < size; i += 1) {
+                data.put(perm.permute(i));
+            }
+            for (int i = 0; i < size; i += 1) {
+                data.put(perm.invert(i));
+            }
+        }
+        try (FileChannel out = FileChannel.open(file,
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the notches of ROTOR, or "" if it has none. */
+    private static String notches(Rotor rotor) {
+        return rotor instanceof MovingRotor
+            ? ((MovingRotor) rotor).notches() : "";
+    }
+
+    /** Return the number of code points in S. */
+    private static int codePoints(String s) {
+        return s.codePointCount(0, s.length());
+    }
+
+    /** Store S in DATA as its length in code points followed by its
+     *  code points. */
+    private static void putString(IntBuffer data, String s) {
+        data.put(codePoints(s));
+        s.codePoints().forEach(data::put);
+    }
+
+    /** Alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Available rotor templates, by name. */
+    private final Map<String, Rotor> _allRotors;
+
+    /** Greatest number of parsed settings lines kept. */
+    private static final int MAX_SETTINGS_LINES = 256;
+
+    /** Parsed settings lines, least recently used first. */
+    private final LinkedHashMap<String, SettingsLine> _settingsLines =
+        new LinkedHashMap<>(MAX_SETTINGS_LINES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, SettingsLine> eldest) {
+                return size() > MAX_SETTINGS_LINES;
+            }
+        };
+
+    /** Greatest number of period tables kept. */
+    private static final int MAX_PERIOD_TABLES = 16;
+
+    /** Greatest number of requests for period tables not yet built
+     *  that are remembered. */
+    private static final int MAX_PERIOD_REQUESTS = 1024;
+
+    /** Period tables (or null for those too large), keyed by the names
+     *  and settings of the rotors, least recently used first. */
+    private final LinkedHashMap<String, PeriodTable> _periodTables =
+        new LinkedHashMap<>(MAX_PERIOD_TABLES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, PeriodTable> eldest) {
+                return size() > MAX_PERIOD_TABLES;
+            }
+        };
+
+    /** Keys, as for _periodTables, of the tables requested once but not
+     *  built, least recently requested first. */
+    private final LinkedHashMap<String, Boolean> _periodRequests =
+        new LinkedHashMap<>(MAX_PERIOD_REQUESTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_PERIOD_REQUESTS;
+            }
+        };
+}
@@ -13,6 +13,16 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    /** A non-moving rotor with the same name and wiring as ORIGINAL. */
+    FixedRotor(FixedRotor original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
+
     @Override
     public String toString() {
         return "FixedRotor " + name();
@@ -0,0 +1,247 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Instrumentation of the phases of a run: loading a configuration,
+ *  setting up a machine from a settings line, and converting a message
+ *  line.  Each phase is bracketed by a begin and an end call, which
+ *  emit a Java Flight Recorder event (enigma.Configuration,
+ *  enigma.Section or enigma.Message) with its duration and size, and,
+ *  if the system property enigma.metrics is true, update the counters
+ *  of the MetricsMXBean registered as enigma:type=Metrics.
+ *
+ *  When no flight recording includes these events and the property is
+ *  not set, the calls cost next to nothing: the events are never
+ *  committed (and their allocation is usually optimized away), and the
+ *  metrics code is guarded by a constant.
+ *  @author Melody Ma
+ */
+final class Instrumentation {
+
+    /** True iff JMX metrics are collected. */
+    static final boolean METRICS = Boolean.getBoolean("enigma.metrics");
+
+    /** Not instantiated. */
+    private Instrumentation() {
+    }
+
+    /** Return the event for a configuration being loaded from SOURCE. */
+    static ConfigurationEvent beginConfiguration(String source) {
+        ConfigurationEvent event = new ConfigurationEvent();
+        event.begin();
+        event.source = source;
+        return event;
+    }
+
+    /** End EVENT, CONFIG having been loaded. */
+    static void endConfiguration(ConfigurationEvent event,
+                                 Configuration config) {
+        event.alphabetSize = config.alphabet().size();
+        event.rotors = config.rotors().size();
+        event.commit();
+        if (METRICS) {
+            Metrics.INSTANCE._configurations.increment();
+        }
+    }
+
+    /** Return the event for a machine being set up from a settings line
+     *  of LENGTH characters. */
+    static SectionEvent beginSection(int length) {
+        SectionEvent event = new SectionEvent();
+        event.begin();
+        event.settingsLength = length;
+        if (METRICS) {
+            event.start = System.nanoTime();
+        }
+        return event;
+    }
+
+    /** End EVENT, the machine having been set up. */
+    static void endSection(SectionEvent event) {
+        event.commit();
+        if (METRICS) {
+            Metrics.INSTANCE.section(System.nanoTime() - event.start);
+        }
+    }
+
+    /** Return the event for a message line being converted. */
+    static MessageEvent beginMessage() {
+        MessageEvent event = new MessageEvent();
+        event.begin();
+        if (METRICS) {
+            event.start = System.nanoTime();
+        }
+        return event;
+    }
+
+    /** End EVENT, a message of CHARACTERS characters having been
+     *  converted. */
+    static void endMessage(MessageEvent event, long characters) {
+        event.characters = characters;
+        event.commit();
+        if (METRICS) {
+            Metrics.INSTANCE.message(characters,
+                                     System.nanoTime() - event.start);
+        }
+    }
+
+    /** Loading of a configuration. */
+    @Name("enigma.Configuration")
+    @Label("Configuration Load")
+    @Category("Enigma")
+    @Description("Reading or mapping a machine configuration")
+    static final class ConfigurationEvent extends Event {
+        /** File the configuration was read from. */
+        @Label("Source")
+        String source;
+
+        /** Number of characters in the alphabet. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        /** Number of available rotors. */
+        @Label("Rotors")
+        int rotors;
+    }
+
+    /** Setting up a machine for a section of input. */
+    @Name("enigma.Section")
+    @Label("Section Setup")
+    @Category("Enigma")
+    @Description("Setting up a machine from a settings line")
+    static final class SectionEvent extends Event {
+        /** Length of the settings line. */
+        @Label("Settings Length")
+        @DataAmount(DataAmount.BYTES)
+        int settingsLength;
+
+        /** Value of System.nanoTime() at the start, for the metrics. */
+        transient long start;
+    }
+
+    /** Converting a message line. */
+    @Name("enigma.Message")
+    @Label("Message Conversion")
+    @Category("Enigma")
+    @Description("Converting one message line")
+    static final class MessageEvent extends Event {
+        /** Number of characters converted. */
+        @Label("Characters")
+        long characters;
+
+        /** Value of System.nanoTime() at the start, for the metrics. */
+        transient long start;
+    }
+
+    /** The counters behind the MetricsMXBean. */
+    static final class Metrics implements MetricsMXBean {
+
+        /** The instance, registered with the platform MBean server when
+         *  this class is initialized. */
+        static final Metrics INSTANCE = new Metrics();
+
+        static {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE,
+                                   new ObjectName("enigma:type=Metrics"));
+            } catch (JMException excp) {
+                System.err.printf("enigma: metrics not registered: %s%n",
+                                  excp);
+            }
+        }
+
+        /** Record the setting up of a machine for a section, taking NANOS
+         *  nanoseconds. */
+        void section(long nanos) {
+            _sections.increment();
+            _sectionNanos.add(nanos);
+        }
+
+        /** Record the conversion of a message of CHARACTERS characters,
+         *  taking NANOS nanoseconds. */
+        void message(long characters, long nanos) {
+            _messages.increment();
+            _characters.add(characters);
+            _nanos.add(nanos);
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            _latency[Math.min(bucket, _latency.length - 1)].increment();
+        }
+
+        @Override
+        public long getConfigurationsLoaded() {
+            return _configurations.sum();
+        }
+
+        @Override
+        public long getSectionsProcessed() {
+            return _sections.sum();
+        }
+
+        @Override
+        public long getSectionSetupNanos() {
+            return _sectionNanos.sum();
+        }
+
+        @Override
+        public long getMessagesConverted() {
+            return _messages.sum();
+        }
+
+        @Override
+        public long getCharactersConverted() {
+            return _characters.sum();
+        }
+
+        @Override
+        public double getThroughput() {
+            long nanos = _nanos.sum();
+            return nanos == 0 ? 0 : _characters.sum() * 1e9 / nanos;
+        }
+
+        @Override
+        public long[] getLatencyHistogram() {
+            long[] result = new long[_latency.length];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = _latency[i].sum();
+            }
+            return result;
+        }
+
+        /** Number of configurations loaded. */
+        private final LongAdder _configurations = new LongAdder();
+        /** Number of sections set up. */
+        private final LongAdder _sections = new LongAdder();
+        /** Total time spent setting up sections, in nanoseconds. */
+        private final LongAdder _sectionNanos = new LongAdder();
+        /** Number of messages converted. */
+        private final LongAdder _messages = new LongAdder();
+        /** Number of characters converted. */
+        private final LongAdder _characters = new LongAdder();
+        /** Total time spent converting messages, in nanoseconds. */
+        private final LongAdder _nanos = new LongAdder();
+        /** Message counts by latency bucket (see MetricsMXBean). */
+        private final LongAdder[] _latency = new LongAdder[LATENCY_BUCKETS];
+
+        {
+            for (int i = 0; i < _latency.length; i += 1) {
+                _latency[i] = new LongAdder();
+            }
+        }
+    }
+
+    /** Number of buckets in the latency histogram. */
+    static final int LATENCY_BUCKETS = 24;
+}
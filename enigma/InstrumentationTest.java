@@ -0,0 +1,58 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the Instrumentation class.  The
+ *  metrics are collected only when the tests run with the system
+ *  property enigma.metrics set to true, as they do under 'make unit';
+ *  otherwise the tests of the metrics are skipped.
+ *  @author Melody Ma
+ */
+public class InstrumentationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the sum of the entries of the latency histogram of
+     *  METRICS. */
+    private static long latencyCount(MetricsMXBean metrics) {
+        long result = 0;
+        for (long count : metrics.getLatencyHistogram()) {
+            result += count;
+        }
+        return result;
+    }
+
+    @Test
+    public void checkMetrics() {
+        assumeTrue(Instrumentation.METRICS);
+        MetricsMXBean metrics = Instrumentation.Metrics.INSTANCE;
+        long sections = metrics.getSectionsProcessed();
+        long sectionNanos = metrics.getSectionSetupNanos();
+        long messages = metrics.getMessagesConverted();
+        long characters = metrics.getCharactersConverted();
+        long latencies = latencyCount(metrics);
+        String output = MainTest.sequential(
+            standardMachine().configuration().newMachine(),
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS SHOULDER HIAWATHA\n"
+            + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS\n"
+            + "SHOULDER HIAWATHA\n");
+        assertFalse(output.contains("Error"));
+        assertEquals(sections + 2, metrics.getSectionsProcessed());
+        assertTrue(metrics.getSectionSetupNanos() > sectionNanos);
+        assertEquals(messages + 3, metrics.getMessagesConverted());
+        assertEquals(characters + 46, metrics.getCharactersConverted());
+        assertEquals(latencies + 3, latencyCount(metrics));
+        assertTrue(metrics.getThroughput() > 0);
+    }
+
+}
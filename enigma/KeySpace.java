@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The keys (rotor orders and rotor settings, without plugboard) that can
+ *  be used with a given machine.  A rotor order places a reflector in
+ *  slot 0, non-moving rotors in the following slots, and moving rotors in
+ *  the rightmost numPawls() slots, as the assignment requires.  Rotor
+ *  settings are numbered from 0 to numSettings()-1, the leftmost
+ *  non-reflector rotor being the most significant digit.
+ *  @author Melody Ma
+ */
+class KeySpace {
+
+    /** The key space of MACHINE, whose available rotors supply the
+     *  rotor orders. */
+    KeySpace(Machine machine) {
+        _size = machine.alphabet().size();
+        _digits = machine.numRotors() - 1;
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        for (Rotor rotor : machine.availableRotors().values()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        reflectors.sort(null);
+        fixed.sort(null);
+        moving.sort(null);
+        _orders = new ArrayList<>();
+        String[] order = new String[machine.numRotors()];
+        int firstMoving = machine.numRotors() - machine.numPawls();
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(order, 1, firstMoving, fixed, moving);
+        }
+        long settings = 1;
+        for (int i = 0; i < _digits; i += 1) {
+            if (settings > Long.MAX_VALUE / _size) {
+                throw error("Key space is too large.");
+            }
+            settings *= _size;
+        }
+        _numSettings = settings;
+    }
+
+    /** Add to _orders all completions of ORDER whose slots from SLOT on
+     *  hold distinct rotors from FIXED (before slot FIRSTMOVING) and
+     *  MOVING (from FIRSTMOVING on). */
+    private void addOrders(String[] order, int slot, int firstMoving,
+                           List<String> fixed, List<String> moving) {
+        if (slot == order.length) {
+            _orders.add(order.clone());
+            return;
+        }
+        for (String name : slot < firstMoving ? fixed : moving) {
+            boolean used = false;
+            for (int i = 1; i < slot; i += 1) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[slot] = name;
+                addOrders(order, slot + 1, firstMoving, fixed, moving);
+            }
+        }
+    }
+
+    /** Return the number of rotor orders. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Return rotor order number K, reflector first. */
+    String[] order(int k) {
+        return _orders.get(k).clone();
+    }
+
+    /** Return the number of rotor settings for each rotor order. */
+    long numSettings() {
+        return _numSettings;
+    }
+
+    /** Store the indices of rotor setting number K in SETTING, which has
+     *  one entry for each non-reflector slot, as for
+     *  Machine.setRotors(int[]). */
+    void setting(long k, int[] setting) {
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] = (int) (k % _size);
+            k /= _size;
+        }
+    }
+
+    /** Advance SETTING to the next rotor setting in numerical order,
+     *  wrapping around after the last. */
+    void next(int[] setting) {
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] += 1;
+            if (setting[i] < _size) {
+                return;
+            }
+            setting[i] = 0;
+        }
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotors that have a setting. */
+    private final int _digits;
+
+    /** All rotor orders. */
+    private final List<String[]> _orders;
+
+    /** Number of rotor settings for each order. */
+    private final long _numSettings;
+}
@@ -1,6 +1,10 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -14,11 +18,60 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             HashMap<String, Rotor> allRotors) {
-        _alphabet = alpha;
-        _numRotors = numRotors;
-        _pawls = pawls;
-        _allRotors = allRotors;
+        this(new Configuration(alpha, numRotors, pawls, allRotors));
+    }
+
+    /** A new Enigma machine of the kind described by CONFIG, with no
+     *  rotors inserted and an empty plugboard.  Machines built from one
+     *  configuration share their rotors' conversion tables, but each has
+     *  its own rotor settings and plugboard. */
+    Machine(Configuration config) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
         _rotors = new Rotor[_numRotors];
+        _move = new boolean[_numRotors];
+        _plugboard = new Permutation("", _alphabet);
+    }
+
+    /** Return a new machine with my configuration, loaded with copies
+     *  of my current rotors at their current settings and with my
+     *  plugboard.  The copy steps independently of me.  I am not
+     *  changed (keystrokes converted through my period table and not
+     *  yet applied to my rotors are passed on to the copy as they
+     *  are), so several threads may copy me at once. */
+    Machine copy() {
+        Machine result = new Machine(_config);
+        for (int i = 0; i < _rotors.length; i++) {
+            if (_rotors[i] != null) {
+                result._rotors[i] = _rotors[i].copy();
+                if (i > 0) {
+                    result._rotors[i].set(_rotors[i].setting());
+                }
+            }
+        }
+        result._plugboard = _plugboard;
+        result._rotorNames = _rotorNames;
+        if (_useComposite) {
+            result.useCompositeTable(true);
+        }
+        result._usePeriod = _usePeriod;
+        result._period = _period;
+        result._periodValid = _periodValid;
+        result._periodRow = _periodRow;
+        result._pending = _pending;
+        return result;
+    }
+
+    /** Return my configuration. */
+    Configuration configuration() {
+        return _config;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -31,37 +84,366 @@ class Machine {
         return _pawls;
     }
 
-    /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
+    /** Set my rotor slots to copies of the rotors named ROTORS from my
+     *  set of available rotors (ROTORS[0] names the reflector), so that
+     *  machines sharing a set of rotors do not disturb each other.
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        discardPeriodTable();
+        _rotorNames = null;
         for (int i = 0; i < rotors.length; i++) {
-            String name = rotors[i];
-            Rotor curr = _allRotors.get(name);
-            if (curr == null) {
-                throw error("No such Rotor.");
-            }
-            _rotors[i] = curr;
+            _rotors[i] = _config.newRotor(rotors[i]);
         }
         if (!_rotors[0].reflecting()) {
             throw error("First rotor is not a reflector.");
         }
+        _compositeValid = false;
+        _rotorNames = rotors.clone();
+    }
+
+    /** Insert the rotors named by SETTINGS, set them and set my plugboard
+     *  as SETTINGS describes.  If my rotors are already those named, as
+     *  when a section of input has the same settings line as the one
+     *  before, they are kept and only their settings change. */
+    void setUp(SettingsLine settings) {
+        if (!Arrays.equals(_rotorNames, settings.rotors())) {
+            insertRotors(settings.rotors());
+        }
+        setRotors(settings.settings());
+        setPlugboard(settings.plugboard());
     }
 
     /** Set my rotors according to SETTING, which must be a string of
-     *  numRotors()-1 characters in my alphabet. The first letter refers
-     *  to the leftmost rotor setting (not counting the reflector).  */
+     *  numRotors()-1 characters (code points) in my alphabet. The first
+     *  letter refers to the leftmost rotor setting (not counting the
+     *  reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != numRotors() - 1) {
+        int[] points = setting.codePoints().toArray();
+        if (points.length != numRotors() - 1) {
             throw error("Input has the wrong length.");
         }
+        discardPeriodTable();
         for (int i = 1; i < _rotors.length; i++) {
-            Rotor curr = _rotors[i];
-            char setto = setting.charAt(i - 1);
-            curr.set(setto);
+            _rotors[i].set(_alphabet.codePointToInt(points[i - 1]));
+        }
+    }
+
+    /** Set my rotors according to SETTING, which holds the indices of
+     *  the settings of my rotors in slots 1 to numRotors()-1 at
+     *  positions 0 to numRotors()-2, as for setRotors(String). */
+    void setRotors(int[] setting) {
+        if (setting.length != numRotors() - 1) {
+            throw error("Input has the wrong length.");
+        }
+        discardPeriodTable();
+        for (int i = 1; i < _rotors.length; i++) {
+            _rotors[i].set(setting[i - 1]);
+        }
+    }
+
+    /** Return the rotor in slot SLOT (slot 0 holding the reflector).
+     *  Its setting may lag behind keystrokes converted through my period
+     *  table until syncRotors is called. */
+    Rotor rotor(int slot) {
+        return _rotors[slot];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the rotors available for insertion, by name. */
+    Map<String, Rotor> availableRotors() {
+        return _config.rotors();
+    }
+
+    /** Return the names of the rotors in my slots, starting with the
+     *  reflector. */
+    String[] rotorNames() {
+        String[] result = new String[_rotors.length];
+        for (int i = 0; i < _rotors.length; i++) {
+            result[i] = _rotors[i].name();
+        }
+        return result;
+    }
+
+    /** Return the settings my rotors will have after N more keystrokes,
+     *  indexed by slot (slot 0 being the reflector), without changing
+     *  my state.  The cost depends on the stepping period of the rotors,
+     *  not on N: only keystrokes that move a rotor other than the
+     *  rightmost one are simulated individually, and whole turns of the
+     *  rightmost rotor beyond the first repetition are skipped. */
+    int[] positionsAfter(long n) {
+        syncRotors();
+        return positions(n);
+    }
+
+    /** Return positionsAfter(N), assuming my rotors are in sync. */
+    private int[] positions(long n) {
+        if (n < 0) {
+            throw error("Cannot step backwards.");
+        }
+        int[] posn = new int[_rotors.length];
+        for (int i = 0; i < posn.length; i++) {
+            posn[i] = _rotors[i].setting();
+        }
+        int size = _alphabet.size();
+        long turns = n / size;
+        if (turns > MIN_CYCLE_SEARCH) {
+            turns = reduceTurns(posn, turns);
+        }
+        for (long k = 0; k < turns; k++) {
+            stepQuickly(posn, size);
+        }
+        stepQuickly(posn, n % size);
+        return posn;
+    }
+
+    /** Set my rotors to the settings they would have after N more
+     *  keystrokes. */
+    void seek(long n) {
+        if (_period != null) {
+            if (n < 0) {
+                throw error("Cannot step backwards.");
+            }
+            _periodRow = _period.after(_periodRow, n);
+            _pending += n;
+            return;
+        }
+        int[] posn = positionsAfter(n);
+        for (int i = 1; i < posn.length; i++) {
+            _rotors[i].set(posn[i]);
         }
     }
 
+    /** Given that POSN holds rotor settings from which TURNS whole turns
+     *  of the rightmost rotor are to be made, return a number of turns
+     *  with the same effect on POSN that is no larger than the point at
+     *  which the sequence of settings starts to repeat.  Uses Brent's
+     *  cycle-finding algorithm on the settings at the start of each
+     *  turn. */
+    private long reduceTurns(int[] posn, long turns) {
+        int size = _alphabet.size();
+        int[] tortoise = posn.clone();
+        int[] hare = posn.clone();
+        stepQuickly(hare, size);
+        long power = 1, lambda = 1;
+        while (!Arrays.equals(tortoise, hare)) {
+            if (power == lambda) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                lambda = 0;
+            }
+            stepQuickly(hare, size);
+            lambda += 1;
+            if (lambda + power > turns) {
+                return turns;
+            }
+        }
+        System.arraycopy(posn, 0, tortoise, 0, posn.length);
+        System.arraycopy(posn, 0, hare, 0, posn.length);
+        for (long k = 0; k < lambda; k++) {
+            stepQuickly(hare, size);
+        }
+        long mu = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            stepQuickly(tortoise, size);
+            stepQuickly(hare, size);
+            mu += 1;
+        }
+        if (turns <= mu) {
+            return turns;
+        }
+        return mu + (turns - mu) % lambda;
+    }
+
+    /** Apply N keystrokes to the rotor settings POSN.  Runs of keystrokes
+     *  that move only the rightmost rotor are applied in one step. */
+    private void stepQuickly(int[] posn, long n) {
+        int last = posn.length - 1;
+        Rotor fast = _rotors[last];
+        int size = _alphabet.size();
+        while (n > 0) {
+            boolean quiet = true;
+            for (int i = 0; i < last - 1 && quiet; i++) {
+                quiet = !(_rotors[i].rotates()
+                          && _rotors[i + 1].notchAt(posn[i + 1]));
+            }
+            if (quiet && !fast.rotates()) {
+                break;
+            } else if (quiet) {
+                long run = n;
+                if (_rotors[last - 1].rotates()) {
+                    for (int d = 0; d < size && d < run; d++) {
+                        if (fast.notchAt((posn[last] + d) % size)) {
+                            run = d;
+                        }
+                    }
+                }
+                posn[last] = (int) ((posn[last] + run) % size);
+                n -= run;
+                if (n == 0) {
+                    break;
+                }
+            }
+            step(posn);
+            n -= 1;
+        }
+    }
+
+    /** Apply one keystroke to the rotor settings POSN, exactly as
+     *  advanceRotors would to my rotors at those settings. */
+    private void step(int[] posn) {
+        boolean[] move = _move;
+        int last = move.length - 1;
+        int size = _alphabet.size();
+        for (int i = 0; i < last; i++) {
+            move[i] = _rotors[i].rotates()
+                && _rotors[i + 1].notchAt(posn[i + 1]);
+        }
+        move[last] = true;
+        for (int i = 0; i <= last; i++) {
+            if (move[i]) {
+                if (_rotors[i].rotates()) {
+                    posn[i] = (posn[i] + 1) % size;
+                }
+                if (i < last) {
+                    if (_rotors[i + 1].rotates()) {
+                        posn[i + 1] = (posn[i + 1] + 1) % size;
+                    }
+                    i += 1;
+                }
+            }
+        }
+    }
+
+    /** Convert the characters of MSG from START up to (not including)
+     *  END into OUT starting at OUTSTART, exactly as convert(MSG, START,
+     *  END, OUT, OUTSTART) would, but dividing the message into chunks
+     *  that are converted in parallel on POOL by copies of me sought to
+     *  the start of each chunk.  Leaves me in the state I would have
+     *  after converting the whole range. */
+    void convertParallel(char[] msg, int start, int end,
+                         char[] out, int outStart, ForkJoinPool pool) {
+        int chunk = Math.max(MIN_PARALLEL_CHUNK,
+                             (end - start) / (4 * pool.getParallelism()));
+        syncRotors();
+        pool.invoke(new ChunkConverter(this, msg, start, end, start,
+                                       out, outStart, chunk));
+        seek(end - start);
+    }
+
+    /** Task converting one range of a message on a copy of a machine. */
+    private static class ChunkConverter extends RecursiveAction {
+
+        /** A task converting MSG from START up to END into OUT, starting
+         *  at OUTSTART, with a copy of MACHINE that is positioned at the
+         *  character at index ORIGIN.  Ranges longer than CHUNK
+         *  are split. */
+        ChunkConverter(Machine machine, char[] msg, int start, int end,
+                       int origin, char[] out, int outStart, int chunk) {
+            _machine = machine;
+            _msg = msg;
+            _start = start;
+            _end = end;
+            _origin = origin;
+            _out = out;
+            _outStart = outStart;
+            _chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (_end - _start <= _chunk) {
+                Machine machine = _machine.copy();
+                machine.seek(_start - _origin);
+                machine.convert(_msg, _start, _end, _out,
+                                _outStart + _start - _origin);
+            } else {
+                int mid = _start + (_end - _start) / 2;
+                invokeAll(new ChunkConverter(_machine, _msg, _start, mid,
+                                             _origin, _out, _outStart,
+                                             _chunk),
+                          new ChunkConverter(_machine, _msg, mid, _end,
+                                             _origin, _out, _outStart,
+                                             _chunk));
+            }
+        }
+
+        /** Machine positioned at the start of the whole message. */
+        private final Machine _machine;
+        /** Message being converted. */
+        private final char[] _msg;
+        /** Bounds of my range of _msg. */
+        private final int _start, _end;
+        /** Index in _msg of the first character of the whole message. */
+        private final int _origin;
+        /** Destination of the converted message. */
+        private final char[] _out;
+        /** Index in _out of the result for index _origin of _msg. */
+        private final int _outStart;
+        /** Longest range converted without splitting. */
+        private final int _chunk;
+    }
+
+    /** Turn caching of the combined conversion of all rotors left of the
+     *  rightmost one (including the reflector) on or off, according to
+     *  ON.  When on, that table is rebuilt only after one of those
+     *  rotors changes setting, so that the usual keystroke needs only
+     *  the rightmost rotor and one table lookup.  Results are identical
+     *  either way. */
+    void useCompositeTable(boolean on) {
+        _useComposite = on;
+        _compositeValid = false;
+        if (on && _composite == null) {
+            _composite = new int[_alphabet.size()];
+            _compositeSettings = new int[_numRotors - 1];
+        }
+    }
+
+    /** Turn the use of period tables on or off, according to ON.  When
+     *  on, the first conversion after my rotors are inserted or set asks
+     *  my configuration for the PeriodTable for my rotors from their
+     *  settings, which is shared by all machines with those rotors and
+     *  settings (see Configuration.periodTable).  If there is one, each
+     *  keystroke is then two plugboard lookups and one table lookup, and
+     *  my rotors are brought up to date only when they are next needed.
+     *  Results are identical either way. */
+    void usePeriodTable(boolean on) {
+        dropPeriodTable();
+        _usePeriod = on;
+    }
+
+    /** Apply to my rotors the keystrokes converted through my period
+     *  table since they were last brought up to date, so that the
+     *  settings of the rotors returned by rotor are current.  The period
+     *  table remains in use. */
+    void syncRotors() {
+        if (_pending > 0) {
+            int[] posn = positions(_pending);
+            _pending = 0;
+            for (int i = 1; i < posn.length; i++) {
+                _rotors[i].set(posn[i]);
+            }
+        }
+    }
+
+    /** Stop using my current period table, if any, after bringing my
+     *  rotors up to date. */
+    private void dropPeriodTable() {
+        syncRotors();
+        discardPeriodTable();
+    }
+
+    /** Stop using my current period table, if any, without bringing my
+     *  rotors up to date, as when they are about to be set. */
+    private void discardPeriodTable() {
+        _pending = 0;
+        _period = null;
+        _periodValid = false;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
@@ -71,46 +453,175 @@ class Machine {
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean[] move = new boolean[numRotors()];
-        move[move.length - 1] = true;
-        for (int i = 0; i < numRotors() - 1; i++) {
-            if (_rotors[i].rotates() && _rotors[i + 1].atNotch()) {
-                move[i] = true;
-            }
+        if (!_periodValid && _usePeriod) {
+            _period = _config.periodTable(this);
+            _periodRow = 0;
+            _periodValid = true;
+        }
+        PeriodTable period = _period;
+        if (period != null) {
+            int row = _periodRow;
+            _periodRow = period.next(row);
+            _pending += 1;
+            return _plugboard.invert(period.convert(row,
+                                                    _plugboard.permute(c)));
         }
-        for (int i = 0; i < numRotors(); i++) {
+        stepRotors();
+        return scramble(c);
+    }
+
+    /** Advance the rotors one keystroke, honouring the notches of each
+     *  rotor. */
+    void advanceRotors() {
+        dropPeriodTable();
+        stepRotors();
+    }
+
+    /** Advance the rotors as for advanceRotors, which must not be using
+     *  a period table. */
+    private void stepRotors() {
+        boolean[] move = _move;
+        int last = move.length - 1;
+        for (int i = 0; i < last; i++) {
+            move[i] = _rotors[i].rotates() && _rotors[i + 1].atNotch();
+        }
+        move[last] = true;
+        for (int i = 0; i <= last; i++) {
             if (move[i]) {
                 _rotors[i].advance();
-                if (i < numRotors() - 1) {
+                if (i < last) {
                     _rotors[i + 1].advance();
                     i += 1;
                 }
             }
         }
+    }
+
+    /** Return the result of passing index C through the plugboard and
+     *  the rotors in their current positions. */
+    private int scramble(int c) {
+        if (_useComposite) {
+            Rotor fast = _rotors[_rotors.length - 1];
+            int input = fast.convertForward(_plugboard.permute(c));
+            input = composite()[input];
+            return _plugboard.invert(fast.convertBackward(input));
+        }
         int input = _plugboard.permute(c);
         for (int i = _rotors.length - 1; i >= 0; i--) {
-            Rotor curr = _rotors[i];
-            input = curr.convertForward(input);
+            input = _rotors[i].convertForward(input);
         }
         for (int i = 1; i < _rotors.length; i++) {
-            Rotor curr = _rotors[i];
-            input = curr.convertBackward(input);
+            input = _rotors[i].convertBackward(input);
         }
         return _plugboard.invert(input);
     }
 
+    /** Return the combined conversion of all rotors but the rightmost,
+     *  rebuilding it first if any of them has changed setting. */
+    private int[] composite() {
+        int last = _rotors.length - 1;
+        boolean valid = _compositeValid;
+        for (int i = 0; i < last && valid; i++) {
+            valid = _compositeSettings[i] == _rotors[i].setting();
+        }
+        if (!valid) {
+            for (int i = 0; i < last; i++) {
+                _compositeSettings[i] = _rotors[i].setting();
+            }
+            for (int x = 0; x < _composite.length; x++) {
+                int input = x;
+                for (int i = last - 1; i >= 0; i--) {
+                    input = _rotors[i].convertForward(input);
+                }
+                for (int i = 1; i < last; i++) {
+                    input = _rotors[i].convertBackward(input);
+                }
+                _composite[x] = input;
+            }
+            _compositeValid = true;
+        }
+        return _composite;
+    }
+
+    /** Fill TABLE, which has one entry per alphabet character, with the
+     *  conversion of each index by my rotors in their current positions,
+     *  ignoring the plugboard and without advancing the rotors. */
+    void scramblerTable(int[] table) {
+        syncRotors();
+        for (int x = 0; x < table.length; x++) {
+            int input = x;
+            for (int i = _rotors.length - 1; i >= 0; i--) {
+                input = _rotors[i].convertForward(input);
+            }
+            for (int i = 1; i < _rotors.length; i++) {
+                input = _rotors[i].convertBackward(input);
+            }
+            table[x] = input;
+        }
+    }
+
+    /** Convert the LEN indices of IN starting at INSTART, storing the
+     *  results in OUT starting at OUTSTART and updating the state of
+     *  the rotors accordingly.  IN and OUT may be the same array. */
+    void convert(int[] in, int inStart, int[] out, int outStart, int len) {
+        for (int k = 0; k < len; k++) {
+            out[outStart + k] = convert(in[inStart + k]);
+        }
+    }
+
+    /** Convert the characters of MSG from START up to (not including)
+     *  END, storing the results in OUT starting at OUTSTART and updating
+     *  the state of the rotors accordingly. */
+    void convert(CharSequence msg, int start, int end,
+                 char[] out, int outStart) {
+        for (int k = start; k < end; k++) {
+            int result = convert(_alphabet.toInt(msg.charAt(k)));
+            out[outStart + k - start] = _alphabet.toChar(result);
+        }
+    }
+
+    /** Convert the characters of MSG from START up to (not including)
+     *  END, storing the results in OUT starting at OUTSTART and updating
+     *  the state of the rotors accordingly.  MSG and OUT may be the same
+     *  array. */
+    void convert(char[] msg, int start, int end, char[] out, int outStart) {
+        for (int k = start; k < end; k++) {
+            int result = convert(_alphabet.toInt(msg[k]));
+            out[outStart + k - start] = _alphabet.toChar(result);
+        }
+    }
+
+    /** Convert the code points of MSG from START up to (not including)
+     *  END in place, updating the state of the rotors accordingly.
+     *  Unlike the methods converting chars, this handles alphabets with
+     *  supplementary characters. */
+    void convertCodePoints(int[] msg, int start, int end) {
+        for (int k = start; k < end; k++) {
+            int result = convert(_alphabet.codePointToInt(msg[k]));
+            msg[k] = _alphabet.toCodePoint(result);
+        }
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String message = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int result = convert(_alphabet.toInt(msg.charAt(i)));
-            char output = _alphabet.toChar(result);
-            message += output;
+        if (_alphabet.hasSupplementary()) {
+            int[] points = msg.codePoints().toArray();
+            convertCodePoints(points, 0, points.length);
+            return new String(points, 0, points.length);
         }
-        return message;
+        char[] message = new char[msg.length()];
+        convert(msg, 0, msg.length(), message, 0);
+        return new String(message);
     }
 
+    /** Number of whole turns of the rightmost rotor beyond which
+     *  positionsAfter looks for a repeating cycle of settings. */
+    private static final long MIN_CYCLE_SEARCH = 64;
+
+    /** Shortest range of a message converted as one parallel task. */
+    private static final int MIN_PARALLEL_CHUNK = 1 << 14;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -120,12 +631,49 @@ class Machine {
     /** Number of pawls in the machine. */
     private final int _pawls;
 
-    /** Collection of all the rotors. */
-    private final HashMap<String, Rotor> _allRotors;
+    /** Configuration I was built from, supplying the available rotors. */
+    private final Configuration _config;
 
     /** Collection of selected rotors. */
     private Rotor[] _rotors;
 
+    /** Names of the rotors last inserted, or null if none have been. */
+    private String[] _rotorNames;
+
+    /** Scratch record of which rotors advance on the current keystroke. */
+    private final boolean[] _move;
+
+    /** True iff scramble uses the cached table _composite. */
+    private boolean _useComposite;
+
+    /** Combined conversion of the rotors left of the rightmost one. */
+    private int[] _composite;
+
+    /** Settings of the rotors left of the rightmost one when _composite
+     *  was built. */
+    private int[] _compositeSettings;
+
+    /** False if _composite must be rebuilt regardless of settings. */
+    private boolean _compositeValid;
+
     /** Plugboard of the machine. */
     private Permutation _plugboard;
+
+    /** True iff conversions use period tables (see usePeriodTable). */
+    private boolean _usePeriod;
+
+    /** False if my period table must be looked up before the next
+     *  conversion that may use it. */
+    private boolean _periodValid;
+
+    /** Period table for my rotors from the settings they had when it
+     *  was looked up, or null if there is none. */
+    private PeriodTable _period;
+
+    /** Row of _period for my next keystroke. */
+    private int _periodRow;
+
+    /** Number of keystrokes converted through _period that have not
+     *  been applied to my rotors. */
+    private long _pending;
 }
@@ -0,0 +1,370 @@
+package enigma;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.IdentityHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A batch of independent machines, each with its own rotors, settings
+ *  and plugboard, converting one message each in lockstep.  At each
+ *  step, every machine that still has characters to convert advances
+ *  its rotors, and then one character from each message is passed
+ *  through the plugboards and rotors of all the machines together.  The
+ *  results are exactly those the machines would give converting their
+ *  messages one after another.
+ *
+ *  The state of the batch is held as arrays indexed by slot and lane
+ *  (one lane per machine), and the conversion tables of all the rotors
+ *  in use are concatenated, so that each step is a series of table
+ *  lookups at computed offsets.  This class performs a step one lane at
+ *  a time; VectorMachineBatch (compiled separately, from the vector
+ *  directory) performs it several lanes at a time with vector
+ *  operations and gathers, and is used by of() when it has been
+ *  compiled and the runtime provides the Vector API.
+ *  @author Melody Ma
+ */
+class MachineBatch {
+
+    /** Return a batch of MACHINES, vectorized if possible. */
+    static MachineBatch of(Machine... machines) {
+        if (VECTOR_BATCH != null) {
+            try {
+                return VECTOR_BATCH.newInstance((Object) machines);
+            } catch (InvocationTargetException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                /* The Vector API cannot be used; fall back to scalar. */
+                return new MachineBatch(machines, 1);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                /* The Vector API cannot be used; fall back to scalar. */
+                return new MachineBatch(machines, 1);
+            }
+        }
+        return new MachineBatch(machines, 1);
+    }
+
+    /** Return the constructor of VectorMachineBatch, or null if that
+     *  class has not been compiled or the Vector API module is not
+     *  present in this runtime. */
+    private static Constructor<? extends MachineBatch> vectorBatch() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector")
+            .isEmpty()) {
+            return null;
+        }
+        try {
+            return Class.forName("enigma.VectorMachineBatch")
+                .asSubclass(MachineBatch.class)
+                .getDeclaredConstructor(Machine[].class);
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** A batch of MACHINES, which must have the same alphabet and number
+     *  of slots and have their rotors inserted, whose number of lanes is
+     *  padded to a multiple of MULTIPLE.  The machines' states are copied
+     *  now and copied back after each conversion; they should not be
+     *  used otherwise while they are in the batch. */
+    MachineBatch(Machine[] machines, int multiple) {
+        if (machines.length == 0) {
+            throw error("A batch needs at least one machine.");
+        }
+        _machines = machines.clone();
+        _size = machines[0].alphabet().size();
+        _slots = machines[0].numRotors();
+        _lanes = machines.length;
+        _width = (_lanes + multiple - 1) / multiple * multiple;
+        IdentityHashMap<Permutation, Rotor> tables = new IdentityHashMap<>();
+        for (Machine machine : machines) {
+            if (machine.alphabet().size() != _size
+                || machine.numRotors() != _slots) {
+                throw error("Machines in a batch must be alike.");
+            }
+            for (int slot = 0; slot < _slots; slot += 1) {
+                Rotor rotor = machine.rotor(slot);
+                if (rotor == null) {
+                    throw error("Machines in a batch need their rotors.");
+                }
+                tables.putIfAbsent(rotor.permutation(), rotor);
+            }
+        }
+        int square = _size * _size;
+        if ((long) tables.size() * square > Integer.MAX_VALUE) {
+            throw error("Rotor tables are too large to batch.");
+        }
+        _forward = new int[tables.size() * square];
+        _backward = new int[_forward.length];
+        _notches = new int[tables.size() * _size];
+        IdentityHashMap<Permutation, Integer> bases =
+            new IdentityHashMap<>();
+        for (Rotor rotor : tables.values()) {
+            int k = bases.size();
+            bases.put(rotor.permutation(), k * square);
+            for (int posn = 0, j = k * square; posn < _size; posn += 1) {
+                _notches[k * _size + posn] = rotor.notchAt(posn) ? 1 : 0;
+                for (int p = 0; p < _size; p += 1, j += 1) {
+                    _forward[j] = rotor.convertForward(posn, p);
+                    _backward[j] = rotor.convertBackward(posn, p);
+                }
+            }
+        }
+        _base = new int[_slots * _width];
+        _setting = new int[_base.length];
+        _row = new int[_base.length];
+        _notchBase = new int[_base.length];
+        _rotates = new int[_base.length];
+        _plugBase = new int[_width];
+        _plugForward = new int[_width * _size];
+        _plugInverse = new int[_plugForward.length];
+        for (int lane = 0; lane < _width; lane += 1) {
+            Machine machine = machines[lane < _lanes ? lane : 0];
+            for (int slot = 0; slot < _slots; slot += 1) {
+                int k = slot * _width + lane;
+                Rotor rotor = machine.rotor(slot);
+                _base[k] = bases.get(rotor.permutation());
+                _notchBase[k] = _base[k] / _size;
+                _rotates[k] = rotor.rotates() ? 1 : 0;
+            }
+            _plugBase[lane] = lane * _size;
+        }
+        _move = new boolean[_slots];
+        load();
+    }
+
+    /** Return the number of machines in the batch. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Convert each MESSAGES[K], given as alphabet indices, in place with
+     *  machine K, leaving that machine in the state it would have after
+     *  converting it alone.  The messages are first interleaved, one
+     *  step to a row of width() entries, so working space proportional
+     *  to the longest message times the number of lanes is used. */
+    void convert(int[][] messages) {
+        if (messages.length != _lanes) {
+            throw error("Need one message per machine.");
+        }
+        load();
+        int steps = 0;
+        int[] length = new int[_width];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            length[lane] = messages[lane].length;
+            steps = Math.max(steps, length[lane]);
+        }
+        if ((long) steps * _width > Integer.MAX_VALUE) {
+            throw error("Messages are too long to batch.");
+        }
+        int[] interleaved = new int[steps * _width];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            int[] msg = messages[lane];
+            for (int t = 0, k = lane; t < msg.length; t += 1, k += _width) {
+                interleaved[k] = msg[t];
+            }
+        }
+        convertSteps(interleaved, length, steps);
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            int[] msg = messages[lane];
+            for (int t = 0, k = lane; t < msg.length; t += 1, k += _width) {
+                msg[t] = interleaved[k];
+            }
+        }
+        store();
+    }
+
+    /** Return the conversions of MESSAGES[K] by machine K, for each K,
+     *  leaving the machines as for convert(int[][]). */
+    String[] convert(String[] messages) {
+        Alphabet alpha = _machines[0].alphabet();
+        int[][] indices = new int[messages.length][];
+        for (int k = 0; k < messages.length; k += 1) {
+            indices[k] = new int[messages[k].length()];
+            for (int i = 0; i < indices[k].length; i += 1) {
+                indices[k][i] = alpha.toInt(messages[k].charAt(i));
+            }
+        }
+        convert(indices);
+        String[] result = new String[messages.length];
+        for (int k = 0; k < messages.length; k += 1) {
+            char[] chars = new char[indices[k].length];
+            for (int i = 0; i < chars.length; i += 1) {
+                chars[i] = alpha.toChar(indices[k][i]);
+            }
+            result[k] = new String(chars);
+        }
+        return result;
+    }
+
+    /** Convert the characters in INTERLEAVED in place, where entry
+     *  T * width() + LANE holds the character that lane LANE converts at
+     *  step T, for T < LENGTH[LANE]; other entries are left unspecified.
+     *  STEPS is the greatest entry of LENGTH. */
+    void convertSteps(int[] interleaved, int[] length, int steps) {
+        for (int t = 0, row = 0; t < steps; t += 1, row += _width) {
+            for (int lane = 0; lane < _lanes; lane += 1) {
+                if (t < length[lane]) {
+                    advance(lane);
+                    interleaved[row + lane] =
+                        scramble(lane, interleaved[row + lane]);
+                }
+            }
+        }
+    }
+
+    /** Return the conversion of C by the plugboard and rotors of lane
+     *  LANE at their current settings. */
+    private int scramble(int lane, int c) {
+        int w = _width;
+        int[] forward = _forward, backward = _backward, row = _row;
+        c = _plugForward[_plugBase[lane] + c];
+        for (int k = (_slots - 1) * w + lane; k >= 0; k -= w) {
+            c = forward[row[k] + c];
+        }
+        for (int k = w + lane; k < _slots * w; k += w) {
+            c = backward[row[k] + c];
+        }
+        return _plugInverse[_plugBase[lane] + c];
+    }
+
+    /** Return the alphabet size. */
+    final int size() {
+        return _size;
+    }
+
+    /** Return the number of lanes, including padding. */
+    final int width() {
+        return _width;
+    }
+
+    /** Return the number of rotor slots. */
+    final int slots() {
+        return _slots;
+    }
+
+    /** Advance the rotors of lane LANE as Machine.advanceRotors would. */
+    private void advance(int lane) {
+        boolean[] move = _move;
+        int last = _slots - 1;
+        for (int i = 0; i < last; i += 1) {
+            int k = (i + 1) * _width + lane;
+            move[i] = _rotates[i * _width + lane] != 0
+                && _notches[_notchBase[k] + _setting[k]] != 0;
+        }
+        move[last] = true;
+        for (int i = 0; i <= last; i += 1) {
+            if (move[i]) {
+                bump(i * _width + lane);
+                if (i < last) {
+                    bump((i + 1) * _width + lane);
+                    i += 1;
+                }
+            }
+        }
+    }
+
+    /** Advance the rotor at index K of the slot-and-lane arrays, if it
+     *  rotates. */
+    private void bump(int k) {
+        if (_rotates[k] != 0) {
+            int setting = _setting[k] + 1;
+            if (setting == _size) {
+                setting = 0;
+            }
+            _setting[k] = setting;
+            _row[k] = _base[k] + setting * _size;
+        }
+    }
+
+    /** Copy the rotor settings and plugboards of my machines into my
+     *  arrays. */
+    private void load() {
+        for (int lane = 0; lane < _width; lane += 1) {
+            Machine machine = _machines[lane < _lanes ? lane : 0];
+            machine.syncRotors();
+            for (int slot = 0; slot < _slots; slot += 1) {
+                int k = slot * _width + lane;
+                _setting[k] = machine.rotor(slot).setting();
+                _row[k] = _base[k] + _setting[k] * _size;
+            }
+            Permutation plugboard = machine.plugboard();
+            for (int c = 0; c < _size; c += 1) {
+                _plugForward[_plugBase[lane] + c] = plugboard.permute(c);
+                _plugInverse[_plugBase[lane] + c] = plugboard.invert(c);
+            }
+        }
+    }
+
+    /** Copy the rotor settings in my arrays back to my machines. */
+    private void store() {
+        int[] setting = new int[_slots - 1];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            for (int slot = 1; slot < _slots; slot += 1) {
+                setting[slot - 1] = _setting[slot * _width + lane];
+            }
+            _machines[lane].setRotors(setting);
+        }
+    }
+
+    /** Constructor of the vectorized batch, or null if it cannot be
+     *  used. */
+    private static final Constructor<? extends MachineBatch> VECTOR_BATCH =
+        vectorBatch();
+
+    /** The machines in the batch, by lane. */
+    private final Machine[] _machines;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Number of machines. */
+    private final int _lanes;
+
+    /** Number of lanes, including padding lanes that copy lane 0 but
+     *  never step. */
+    private final int _width;
+
+    /** Concatenated forward conversion tables of all rotors in use. */
+    final int[] _forward;
+
+    /** Concatenated backward conversion tables, arranged as _forward. */
+    final int[] _backward;
+
+    /** _notches[B / _size + P] is 1 if the rotor whose tables begin at B
+     *  has a notch at setting P, and otherwise 0. */
+    final int[] _notches;
+
+    /** Offset in _forward of the tables of the rotor in each slot and
+     *  lane, at index SLOT * _width + LANE. */
+    final int[] _base;
+
+    /** _base / _size for each slot and lane: the offset in _notches of
+     *  the entries for its rotor. */
+    final int[] _notchBase;
+
+    /** Setting of the rotor in each slot and lane. */
+    final int[] _setting;
+
+    /** Offset in _forward of the row for the current setting of the
+     *  rotor in each slot and lane. */
+    final int[] _row;
+
+    /** 1 for each slot and lane whose rotor rotates, and otherwise 0. */
+    final int[] _rotates;
+
+    /** Offset of each lane's entries in _plugForward and _plugInverse. */
+    final int[] _plugBase;
+
+    /** Plugboard of each lane, at _plugBase[LANE] + C. */
+    final int[] _plugForward;
+
+    /** Inverse plugboard of each lane, arranged as _plugForward. */
+    final int[] _plugInverse;
+
+    /** Scratch space for advance. */
+    private final boolean[] _move;
+}
@@ -0,0 +1,422 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Melody Ma
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval moving rotors. */
+    private static final HashMap<String, String> NOTCHES = new HashMap<>();
+    static {
+        NOTCHES.put("I", "Q");
+        NOTCHES.put("II", "E");
+        NOTCHES.put("III", "V");
+        NOTCHES.put("IV", "J");
+        NOTCHES.put("V", "Z");
+        NOTCHES.put("VI", "ZM");
+        NOTCHES.put("VII", "ZM");
+        NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a machine with the naval rotors, NUMROTORS slots and PAWLS
+     *  pawls, loaded with ROTORS at SETTING and with plugboard PLUGS. */
+    static Machine navalMachine(int numRotors, int pawls, String[] rotors,
+                                String setting, String plugs) {
+        HashMap<String, Rotor> all = new HashMap<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NOTCHES.containsKey(name)) {
+                all.put(name, new MovingRotor(name, perm, NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                all.put(name, new Reflector(name, perm));
+            } else {
+                all.put(name, new FixedRotor(name, perm));
+            }
+        }
+        Machine machine = new Machine(UPPER, numRotors, pawls, all);
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugs, UPPER));
+        return machine;
+    }
+
+    /** Return the standard five-rotor test machine. */
+    static Machine standardMachine() {
+        return navalMachine(5, 3,
+                            new String[] {"B", "Beta", "III", "IV", "I"},
+                            "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+    }
+
+    /** A message long enough to step every rotor. */
+    static final String LONG_MSG;
+    static {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            msg.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        LONG_MSG = msg.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkReciprocal() {
+        String cipher = standardMachine().convert(LONG_MSG);
+        assertEquals(LONG_MSG, standardMachine().convert(cipher));
+    }
+
+    @Test
+    public void checkCharBulk() {
+        String expected = standardMachine().convert(LONG_MSG);
+        Machine machine = standardMachine();
+        char[] out = new char[LONG_MSG.length() + 3];
+        machine.convert(LONG_MSG, 0, 1000, out, 3);
+        machine.convert(LONG_MSG.toCharArray(), 1000, LONG_MSG.length(),
+                        out, 1003);
+        assertEquals(expected, new String(out, 3, LONG_MSG.length()));
+    }
+
+    @Test
+    public void checkIndexBulk() {
+        String expected = standardMachine().convert(LONG_MSG);
+        Machine machine = standardMachine();
+        int[] data = new int[LONG_MSG.length()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = UPPER.toInt(LONG_MSG.charAt(i));
+        }
+        machine.convert(data, 0, data, 0, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected.charAt(i), UPPER.toChar(data[i]));
+        }
+    }
+
+    @Test
+    public void checkSharedConfiguration() {
+        Configuration config = standardMachine().configuration();
+        Machine first = config.newMachine(), second = config.newMachine();
+        String[] rotors = {"B", "Beta", "III", "IV", "I"};
+        first.insertRotors(rotors);
+        second.insertRotors(rotors);
+        first.setRotors("AXLE");
+        second.setRotors("AXLE");
+        String expected = first.convert(LONG_MSG);
+        second.setRotors("AXLE");
+        first.setRotors("ZZZZ");
+        assertEquals(expected, second.convert(LONG_MSG));
+        for (Rotor rotor : config.rotors().values()) {
+            assertEquals(0, rotor.setting());
+        }
+    }
+
+    @Test
+    public void checkCompiledConfiguration() throws IOException {
+        Machine original = standardMachine();
+        Path file = Files.createTempFile("enigma", ".bin");
+        try {
+            original.configuration().save(file);
+            assertTrue(Configuration.isCompiled(file));
+            Machine loaded = Configuration.load(file).newMachine();
+            loaded.insertRotors(original.rotorNames());
+            loaded.setRotors("AXLE");
+            loaded.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                                loaded.alphabet()));
+            assertEquals(original.convert(LONG_MSG),
+                         loaded.convert(LONG_MSG));
+            assertEquals(original.availableRotors().keySet(),
+                         loaded.availableRotors().keySet());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkCorruptConfiguration() throws IOException {
+        Path file = Files.createTempFile("enigma", ".bin");
+        try {
+            standardMachine().configuration().save(file);
+            byte[] good = Files.readAllBytes(file);
+            int[] values = {Integer.MAX_VALUE, -1, 1 << 28};
+            for (int k = 2 * Integer.BYTES; k < good.length;
+                 k += Integer.BYTES) {
+                for (int value : values) {
+                    ByteBuffer bad = ByteBuffer.wrap(good.clone())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                    bad.putInt(k, value);
+                    Files.write(file, bad.array());
+                    try {
+                        Configuration.load(file);
+                    } catch (EnigmaException excp) {
+                        /* Expected for most positions. */
+                    }
+                }
+            }
+            ByteBuffer bad = ByteBuffer.wrap(good.clone())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            bad.putInt(2 * Integer.BYTES, Integer.MAX_VALUE);
+            Files.write(file, bad.array());
+            try {
+                Configuration.load(file);
+                fail("loaded a configuration with a huge alphabet length");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("corrupt"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return some differently set up machines. */
+    private static Machine[] batchMachines() {
+        Machine[] result = new Machine[11];
+        String[] reflectors = {"B", "C"};
+        String[] fixed = {"Beta", "Gamma"};
+        String[] moving = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        for (int k = 0; k < result.length; k += 1) {
+            String[] order = {reflectors[k % 2], fixed[k / 2 % 2],
+                              moving[k % 8], moving[(k + 3) % 8],
+                              moving[(k + 5) % 8]};
+            String setting = "" + (char) ('A' + k) + "XL"
+                + (char) ('Z' - 2 * k);
+            String plugs = k % 3 == 0 ? "" : "(HQ) (EX) (IP) (TR) (BY)";
+            result[k] = navalMachine(5, 3, order, setting, plugs);
+        }
+        return result;
+    }
+
+    /** Check that BATCH, a batch of MACHINES = batchMachines(), converts
+     *  as the machines would separately. */
+    private void checkBatch(MachineBatch batch, Machine[] machines) {
+        String[] messages = new String[machines.length];
+        for (int k = 0; k < messages.length; k += 1) {
+            messages[k] = LONG_MSG.substring(k * 37, 1000 + 9 * k * k);
+        }
+        String[] results = batch.convert(messages);
+        Machine[] expected = batchMachines();
+        for (int k = 0; k < messages.length; k += 1) {
+            assertEquals(expected[k].convert(messages[k]), results[k]);
+            assertEquals(expected[k].convert(LONG_MSG),
+                         machines[k].convert(LONG_MSG));
+        }
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        int size = 3100;
+        int[] chars = new int[size];
+        for (int c = 0; c < size; c += 1) {
+            chars[c] = c < 3000 ? 0x4e00 + c : 0x1F300 + c - 3000;
+        }
+        Alphabet alpha = new Alphabet(new String(chars, 0, size));
+        HashMap<String, Rotor> all = new HashMap<>();
+        StringBuilder pairs = new StringBuilder();
+        for (int c = 0; c < size; c += 2) {
+            pairs.append('(').appendCodePoint(chars[c])
+                .appendCodePoint(chars[c + 1]).append(')');
+        }
+        all.put("R", new Reflector("R", new Permutation(pairs.toString(),
+                                                        alpha)));
+        for (int k = 1; k <= 3; k += 1) {
+            StringBuilder cycle = new StringBuilder("(");
+            for (int c = 0; c < size; c += 1) {
+                cycle.appendCodePoint(chars[(c * (4 * k - 1)) % size]);
+            }
+            Permutation perm = new Permutation(cycle.append(')').toString(),
+                                               alpha);
+            all.put("M" + k, new MovingRotor("M" + k, perm,
+                                             new String(chars, k, 2)));
+        }
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 1000; i += 1) {
+            msg.appendCodePoint(chars[(i * 31 + 3000) % size]);
+        }
+        String setting = new String(chars, size - 3, 3);
+        String[] rotors = {"R", "M1", "M2", "M3"};
+        Machine machine = new Machine(alpha, 4, 3, all);
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        String cipher = machine.convert(msg.toString());
+        assertEquals(1000, cipher.codePointCount(0, cipher.length()));
+        assertFalse(msg.toString().equals(cipher));
+        machine.setRotors(setting);
+        assertEquals(msg.toString(), machine.convert(cipher));
+    }
+
+    @Test
+    public void checkSettingsLine() {
+        String line = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        Configuration config = standardMachine().configuration();
+        SettingsLine parsed = config.settingsLine(line);
+        assertSame(parsed, config.settingsLine(line + "  "));
+        assertArrayEquals(new int[] {0, 23, 11, 4}, parsed.settings());
+        String expected = standardMachine().convert(LONG_MSG);
+        Machine machine = config.newMachine();
+        for (int k = 0; k < 3; k++) {
+            Main.setUp(machine, line);
+            assertEquals(expected, machine.convert(LONG_MSG));
+            Main.setUp(machine, "* C Beta III IV I AAAA");
+        }
+        String[] bad = {
+            "B Beta III IV I AXLE", "* B Beta III IV",
+            "* B Beta III IV IV AXLE", "* B Beta III IV X AXLE",
+            "* Beta B III IV I AXLE",
+            "* B Beta III IV I AXL", "* B Beta III IV I AXL1",
+        };
+        for (String settings : bad) {
+            try {
+                config.settingsLine(settings);
+                fail("accepted " + settings);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkBatch() {
+        Machine[] machines = batchMachines();
+        checkBatch(new MachineBatch(machines, 1), machines);
+        machines = batchMachines();
+        checkBatch(MachineBatch.of(machines), machines);
+    }
+
+    @Test
+    public void checkCompositeTable() {
+        String[][] rotors = {
+            {"B", "Beta", "III", "IV", "I"},
+            {"C", "VI", "VII", "II", "VIII"},
+        };
+        for (String[] choice : rotors) {
+            int pawls = choice[1].equals("Beta") ? 3 : 4;
+            Machine plain = navalMachine(5, pawls, choice, "DQZL", "(AB)");
+            Machine cached = navalMachine(5, pawls, choice, "DQZL", "(AB)");
+            cached.useCompositeTable(true);
+            assertEquals(plain.convert(LONG_MSG), cached.convert(LONG_MSG));
+            plain.setRotors("AELY");
+            cached.setRotors("AELY");
+            assertEquals(plain.convert(LONG_MSG), cached.convert(LONG_MSG));
+        }
+    }
+
+    @Test
+    public void checkSeek() {
+        String[][] rotors = {
+            {"B", "Beta", "III", "IV", "I"},
+            {"C", "VI", "VII", "II", "VIII"},
+        };
+        for (String[] choice : rotors) {
+            int pawls = choice[1].equals("Beta") ? 3 : 4;
+            Machine stepped = navalMachine(5, pawls, choice, "ADUZ", "");
+            Machine origin = navalMachine(5, pawls, choice, "ADUZ", "");
+            for (int n = 1; n <= 60000; n++) {
+                stepped.convert(0);
+                if (n % 997 == 0 || n < 100) {
+                    assertArrayEquals("seek " + n,
+                                      stepped.positionsAfter(0),
+                                      origin.positionsAfter(n));
+                }
+            }
+            Machine sought = navalMachine(5, pawls, choice, "ADUZ", "");
+            sought.seek(60000);
+            assertEquals(stepped.convert(LONG_MSG), sought.convert(LONG_MSG));
+        }
+    }
+
+    @Test
+    public void checkPeriodTable() {
+        PeriodTable table = PeriodTable.build(standardMachine());
+        assertEquals(26 * 25 * 26, table.rows() - table.tail());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(LONG_MSG);
+        }
+        String[][] rotors = {
+            {"B", "Beta", "III", "IV", "I"},
+            {"C", "VI", "VII", "II", "VIII"},
+        };
+        for (String[] choice : rotors) {
+            int pawls = choice[1].equals("Beta") ? 3 : 4;
+            Machine plain = navalMachine(5, pawls, choice, "ADUZ", "(HQ)");
+            Machine tabled = navalMachine(5, pawls, choice, "ADUZ", "(HQ)");
+            tabled.usePeriodTable(true);
+            tabled.convert(0);
+            tabled.setRotors("ADUZ");
+            assertEquals(plain.convert(text.toString()),
+                         tabled.convert(text.toString()));
+            Machine early = tabled.copy();
+            char[] chars = text.toString().toCharArray();
+            char[] expected = new char[chars.length];
+            char[] actual = new char[chars.length];
+            plain.convert(chars, 0, chars.length, expected, 0);
+            tabled.convertParallel(chars, 0, chars.length, actual, 0,
+                                   new ForkJoinPool(4));
+            assertArrayEquals(expected, actual);
+            early.seek(chars.length);
+            assertArrayEquals(plain.positionsAfter(0),
+                              early.positionsAfter(0));
+            assertArrayEquals(plain.positionsAfter(0),
+                              tabled.positionsAfter(0));
+            Machine copy = tabled.copy();
+            copy.seek(12345);
+            plain.seek(12345);
+            assertEquals(plain.convert(LONG_MSG), copy.convert(LONG_MSG));
+            tabled.setRotors("ADUZ");
+            plain.setRotors("ADUZ");
+            assertEquals(plain.convert(LONG_MSG), tabled.convert(LONG_MSG));
+            MachineBatch batch = new MachineBatch(new Machine[] {tabled}, 1);
+            assertEquals(plain.convert(LONG_MSG),
+                         batch.convert(new String[] {LONG_MSG})[0]);
+            assertEquals(plain.convert(LONG_MSG), tabled.convert(LONG_MSG));
+        }
+    }
+
+    @Test
+    public void checkLongSeek() {
+        Machine machine = standardMachine();
+        int[] start = machine.positionsAfter(0);
+        long period = 26L * 25 * 26 * 26;
+        int[] after = machine.positionsAfter(1_000_000_007L);
+        assertArrayEquals(after,
+                          machine.positionsAfter(1_000_000_007L % period
+                                                 + period));
+        assertArrayEquals(start, machine.positionsAfter(0));
+    }
+
+    @Test
+    public void checkParallel() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append(LONG_MSG);
+        }
+        char[] msg = text.toString().toCharArray();
+        Machine serial = standardMachine();
+        String expected = serial.convert(text.toString());
+        Machine parallel = standardMachine();
+        char[] out = new char[msg.length];
+        parallel.convertParallel(msg, 0, msg.length, out, 0,
+                                 new ForkJoinPool(4));
+        assertEquals(expected, new String(out));
+        assertEquals(serial.convert(LONG_MSG), parallel.convert(LONG_MSG));
+    }
+
+}
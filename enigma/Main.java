@@ -1,12 +1,32 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.HashMap;
+import java.util.stream.IntStream;
 
 import static enigma.EnigmaException.*;
 
@@ -23,10 +43,37 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  The positional arguments may be preceded
+     *  by options: --parallel converts the sections of the input that
+     *  begin with a settings line on all available processors, writing
+     *  the results in their original order; --mapped memory-maps the
+     *  input file, whose alphabet must be ASCII, and converts its bytes
+     *  directly (see MappedProcessor); --period-tables converts through
+     *  a table of the rotors' conversions over their whole stepping
+     *  period, built once for each rotor order and setting (see
+     *  PeriodTable), which pays when many messages share settings;
+     *  --stream reads the input in blocks and converts message lines a
+     *  block at a time, so that lines of any length can be converted in
+     *  bounded memory; --pipeline reads, converts and writes the input
+     *  on three threads at once (see Pipeline).
+     *  With the option --compile, the only arguments are a configuration
+     *  file and an output file, to which the configuration is written in
+     *  the compiled form read by Configuration.load; a compiled
+     *  configuration may be given wherever a configuration file is
+     *  expected.  With the option
+     *  --serve ADDRESS, the only argument is a configuration file, and
+     *  messages are converted for clients connecting to ADDRESS (see
+     *  Server) until the process is stopped.  With the option
+     *  --search WORKERS, the input is a ciphertext, whose likeliest
+     *  rotor orders and settings (assuming an empty plugboard) are
+     *  found by WORKERS worker processes (see SearchCoordinator) and
+     *  written to the output, best first; each worker runs with the
+     *  option --search-worker PORT and a configuration file as its only
+     *  argument. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            run(new FileInputStream(FileDescriptor.in),
+                new FileOutputStream(FileDescriptor.out), args);
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -34,92 +81,537 @@ public final class Main {
         System.exit(1);
     }
 
-    /** Check ARGS and open the necessary files (see comment on main). */
-    Main(String[] args) {
+    /** Process ARGS as main does, but reading input from IN unless an
+     *  input file is named and writing output to OUT unless an output
+     *  file is named, and throwing an EnigmaException on error instead
+     *  of exiting.  IN and OUT belong to the caller and are left open;
+     *  all files opened for ARGS are closed before returning. */
+    static void run(InputStream in, OutputStream out, String... args) {
+        Main main = new Main(args, in, out);
+        try {
+            main.process();
+        } finally {
+            main.close();
+        }
+    }
+
+    /** Check ARGS and open the necessary files (see comment on main),
+     *  with IN and OUT standing for the standard input and output.
+     *  Closes any files opened if ARGS are in error. */
+    Main(String[] args, InputStream in, OutputStream out) {
+        try {
+            open(args, in, out);
+        } catch (EnigmaException excp) {
+            close();
+            throw excp;
+        }
+    }
+
+    /** Check ARGS and open the necessary files, as for Main(ARGS, IN,
+     *  OUT). */
+    private void open(String[] args, InputStream in, OutputStream out) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--parallel")) {
+                _parallel = true;
+            } else if (args[first].equals("--mapped")) {
+                _mapped = true;
+            } else if (args[first].equals("--stream")) {
+                _stream = true;
+            } else if (args[first].equals("--pipeline")) {
+                _pipeline = true;
+            } else if (args[first].equals("--period-tables")) {
+                _periodTables = true;
+            } else if (args[first].equals("--compile")) {
+                _compile = true;
+            } else if (args[first].equals("--serve")
+                       && first + 1 < args.length) {
+                first += 1;
+                _serveAddress = args[first];
+            } else if (args[first].equals("--search")
+                       && first + 1 < args.length) {
+                first += 1;
+                _searchWorkers = getNumber(args[first]);
+            } else if (args[first].equals("--search-worker")
+                       && first + 1 < args.length) {
+                first += 1;
+                _workerPort = getNumber(args[first]);
+            } else {
+                throw error("unknown option %s", args[first]);
+            }
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configPath = getPath(args[0]);
+
+        if (_serveAddress != null) {
+            if (args.length != 1) {
+                throw error("--serve requires only a configuration");
+            }
+            return;
+        }
+
+        if (_workerPort > 0) {
+            if (args.length != 1) {
+                throw error("--search-worker requires only a configuration");
+            }
+            return;
+        }
+
+        if (_compile) {
+            if (args.length != 2) {
+                throw error("--compile requires a configuration and output");
+            }
+            try {
+                _compiledPath = Paths.get(args[1]);
+            } catch (InvalidPathException excp) {
+                throw error("could not open %s", args[1]);
+            }
+            return;
+        }
+
+        if (_stream && (_mapped || _parallel)) {
+            throw error("--stream cannot be used with --mapped or --parallel");
+        }
+        if (_pipeline && (_mapped || _parallel || _stream)) {
+            throw error("--pipeline cannot be used with other modes");
+        }
+        if (_searchWorkers > 0
+            && (_mapped || _parallel || _stream || _pipeline)) {
+            throw error("--search cannot be used with other modes");
+        }
+
+        if (_mapped) {
+            if (args.length < 2) {
+                throw error("--mapped requires an input file");
+            }
+            _inputPath = getPath(args[1]);
+            _outputChannel = args.length > 2 ? getChannel(args[2])
+                : Channels.newChannel(out);
+            return;
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = getReader(in);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new MessageWriter(out);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** A Main applying the messages in INPUT to machines given to its
+     *  process methods, sending the results to OUTPUT. */
+    Main(BufferedReader input, MessageWriter output) {
+        _input = input;
+        _output = output;
+    }
+
+    /** Return a Scanner reading from the file PATH. */
+    private Scanner getInput(Path path) {
         try {
-            return new Scanner(new File(name));
+            return new Scanner(path);
         } catch (IOException excp) {
+            throw error("could not open %s", path);
+        }
+    }
+
+    /** Close the files I have opened. */
+    private void close() {
+        for (Closeable file : _files) {
+            try {
+                file.close();
+            } catch (IOException excp) {
+                /* Everything has been read or flushed already. */
+            }
+        }
+        _files.clear();
+    }
+
+    /** Return a buffered reader of the file named NAME. */
+    private BufferedReader getReader(String name) {
+        try {
+            InputStream in = Files.newInputStream(Paths.get(name));
+            _files.add(in);
+            return getReader(in);
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a buffered reader of IN. */
+    private BufferedReader getReader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in), BUFFER_SIZE);
+    }
+
+    /** Return a MessageWriter writing to the file named NAME. */
+    private MessageWriter getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
+            OutputStream out = Files.newOutputStream(Paths.get(name));
+            _files.add(out);
+            return new MessageWriter(out);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the positive number written as NAME. */
+    private static int getNumber(String name) {
+        if (!name.matches("\\d{1,9}") || Integer.parseInt(name) == 0) {
+            throw error("bad number %s", name);
+        }
+        return Integer.parseInt(name);
+    }
+
+    /** Return the path named NAME, which must be a readable file. */
+    private Path getPath(String name) {
+        try {
+            Path path = Paths.get(name);
+            if (!Files.isReadable(path)) {
+                throw error("could not open %s", name);
+            }
+            return path;
+        } catch (InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Return a channel writing to the file named NAME. */
+    private FileChannel getChannel(String name) {
+        try {
+            FileChannel channel =
+                FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+            _files.add(channel);
+            return channel;
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the next line of _input, or null if there is none. */
+    private String nextLine() {
+        try {
+            return _input.readLine();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        Machine machine = readConfig();
-        String setting = _input.nextLine();
+        if (_compile) {
+            readConfig().save(_compiledPath);
+            return;
+        } else if (_serveAddress != null) {
+            new Server(readConfig(), _serveAddress).serve();
+            return;
+        } else if (_workerPort > 0) {
+            SearchCoordinator.work(readConfig(), _workerPort);
+            return;
+        } else if (_searchWorkers > 0) {
+            try {
+                search();
+            } finally {
+                _output.flush();
+            }
+            return;
+        }
+        Machine machine = readConfig().newMachine();
+        machine.usePeriodTable(_periodTables);
+        if (_mapped) {
+            new MappedProcessor(machine, _inputPath, _outputChannel).process();
+            return;
+        }
+        try {
+            if (_parallel) {
+                processParallel(machine);
+            } else if (_stream) {
+                processStreaming(machine, BUFFER_SIZE);
+            } else if (_pipeline) {
+                processPipeline(machine);
+            } else {
+                processSequential(machine);
+            }
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Write the best keys for the ciphertext in _input, found by
+     *  _searchWorkers worker processes, to _output. */
+    private void search() {
+        StringBuilder text = new StringBuilder();
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            text.append(line).append(' ');
+        }
+        SearchCoordinator coordinator =
+            new SearchCoordinator(readConfig(), _configPath.toString(),
+                                  _searchWorkers, SEARCH_RESULTS);
+        for (CoincidenceSearch.Result result
+                 : coordinator.search(text.toString())) {
+            _output.write(result + System.lineSeparator());
+        }
+    }
+
+    /** Apply the messages in _input to MACHINE one line at a time. */
+    void processSequential(Machine machine) {
+        String setting = nextLine();
+        if (setting == null) {
+            throw error("No settings line.");
+        }
         setUp(machine, setting);
         if (!setting.contains("*")) {
             throw error("The asterisk must appear in the first column.");
         }
-        while (_input.hasNextLine()) {
-            String curr = _input.nextLine();
+        for (String curr = nextLine(); curr != null; curr = nextLine()) {
             if (curr.contains("*")) {
                 setUp(machine, curr);
-                if (!_input.hasNextLine()) {
+                curr = nextLine();
+                if (curr == null) {
                     break;
                 }
-                curr = _input.nextLine();
-                String converted = machine.convert(curr.replaceAll(" ", ""));
-                printMessageLine(converted);
-                _output.println();
+            }
+            _output.convertLine(machine, curr);
+        }
+    }
+
+    /** Apply the messages in _input to MACHINE as processSequential
+     *  does, but reading _input in blocks of BLOCKSIZE (at least 2)
+     *  characters and converting message lines a block at a time, so
+     *  that the memory used does not depend on the length of lines.  A
+     *  line other than the first is taken to be a settings line if it
+     *  begins with an asterisk and does not directly follow a settings
+     *  line other than the first; any other line with an asterisk is
+     *  reported as an error when the block holding the asterisk is
+     *  reached, after the blocks of the line before it have been
+     *  written.  Likewise, the blocks of a message line before one
+     *  holding a character not in the alphabet are written before the
+     *  error is reported. */
+    void processStreaming(Machine machine, int blockSize) {
+        char[] block = new char[blockSize];
+        CharBuffer text = CharBuffer.wrap(block);
+        StringBuilder settings = new StringBuilder();
+        boolean first = true, forced = false, inLine = false;
+        boolean inSettings = false, afterReturn = false;
+        int kept = 0;
+        while (true) {
+            int n = read(block, kept);
+            boolean done = n < 0;
+            int limit = done ? kept : kept + n;
+            kept = 0;
+            if (!done && limit > 0
+                && Character.isHighSurrogate(block[limit - 1])) {
+                limit -= 1;
+                kept = 1;
+            }
+            for (int i = 0; i < limit; ) {
+                if (afterReturn && block[i] == '\n') {
+                    afterReturn = false;
+                    i += 1;
+                    continue;
+                }
+                afterReturn = false;
+                if (!inLine) {
+                    inLine = true;
+                    inSettings = first || (block[i] == '*' && !forced);
+                    if (inSettings) {
+                        settings.setLength(0);
+                    } else {
+                        _output.beginLine();
+                    }
+                }
+                int end = i;
+                while (end < limit && block[end] != '\n'
+                       && block[end] != '\r') {
+                    end += 1;
+                }
+                if (inSettings) {
+                    if (settings.length() + end - i > MAX_SETTINGS_LENGTH) {
+                        throw error("Settings line is too long.");
+                    }
+                    settings.append(block, i, end - i);
+                } else {
+                    for (int k = i; k < end && !forced; k += 1) {
+                        if (block[k] == '*') {
+                            throw error("Input format is off.");
+                        }
+                    }
+                    _output.convertPart(machine, text, i, end);
+                }
+                if (end < limit) {
+                    afterReturn = block[end] == '\r';
+                    inLine = false;
+                    forced = endStreamedLine(machine, settings, inSettings)
+                        && !first;
+                    first = false;
+                    end += 1;
+                }
+                i = end;
+            }
+            if (done) {
+                if (inLine) {
+                    endStreamedLine(machine, settings, inSettings);
+                    first = false;
+                }
+                break;
+            }
+            if (kept > 0) {
+                block[0] = block[limit];
+            }
+        }
+        if (first) {
+            throw error("No settings line.");
+        }
+    }
+
+    /** End a line of input in processStreaming, which is the settings
+     *  line in SETTINGS if INSETTINGS, and otherwise a message line being
+     *  converted with MACHINE.  Return true iff the line was a settings
+     *  line. */
+    private boolean endStreamedLine(Machine machine, StringBuilder settings,
+                                    boolean inSettings) {
+        if (inSettings) {
+            setUp(machine, settings.toString());
+        } else {
+            _output.endLine();
+        }
+        return inSettings;
+    }
+
+    /** Read characters from _input into BLOCK from index START on,
+     *  returning the number read, or -1 at the end of the input. */
+    private int read(char[] block, int start) {
+        try {
+            return _input.read(block, start, block.length - start);
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Apply the messages in _input to MACHINE as processSequential
+     *  does, reading, converting and writing on separate threads (see
+     *  Pipeline). */
+    void processPipeline(Machine machine) {
+        new Pipeline(machine, _input, _output).process();
+    }
+
+    /** Apply the messages in _input to copies of MACHINE as process does,
+     *  converting up to SECTION_BATCH sections at a time in parallel. */
+    void processParallel(Machine machine) {
+        boolean first = true, forced = false;
+        List<List<String>> batch = new ArrayList<>();
+        List<String> section = null;
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            if (first || (line.contains("*") && !forced)) {
+                if (batch.size() == SECTION_BATCH) {
+                    writeSections(machine, batch);
+                    batch.clear();
+                }
+                section = new ArrayList<>();
+                batch.add(section);
+                forced = !first;
+                first = false;
             } else {
-                String converted = machine.convert(curr.replaceAll(" ", ""));
-                printMessageLine(converted);
-                _output.println();
+                forced = false;
             }
+            section.add(line);
+        }
+        if (first) {
+            throw error("No settings line.");
         }
+        writeSections(machine, batch);
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Convert BATCH, a list of sections each consisting of a settings
+     *  line followed by message lines, on copies of MACHINE in parallel
+     *  and print the results in order.  As in processSequential, the
+     *  first error is reported after the output of the lines before
+     *  it. */
+    private void writeSections(Machine machine, List<List<String>> batch) {
+        StringWriter[] results = new StringWriter[batch.size()];
+        EnigmaException[] errors = new EnigmaException[batch.size()];
+        IntStream.range(0, results.length).parallel()
+            .forEach(k -> {
+                results[k] = new StringWriter();
+                MessageWriter output = new MessageWriter(results[k]);
+                try {
+                    convertSection(machine.copy(), batch.get(k), output);
+                } catch (EnigmaException excp) {
+                    errors[k] = excp;
+                }
+                output.flush();
+            });
+        for (int k = 0; k < results.length; k += 1) {
+            _output.write(results[k].toString());
+            if (errors[k] != null) {
+                throw errors[k];
+            }
+        }
+    }
+
+    /** Convert SECTION, a settings line followed by message lines, with
+     *  M, writing the results to OUTPUT. */
+    private void convertSection(Machine M, List<String> section,
+                                MessageWriter output) {
+        String setting = section.get(0);
+        setUp(M, setting);
+        if (!setting.contains("*")) {
+            throw error("The asterisk must appear in the first column.");
+        }
+        for (int i = 1; i < section.size(); i += 1) {
+            output.convertLine(M, section.get(i));
+        }
+    }
+
+    /** Return the Enigma machine configuration described by the contents
+     *  of configuration file _configPath, which may be textual or
+     *  compiled. */
+    private Configuration readConfig() {
+        Instrumentation.ConfigurationEvent event =
+            Instrumentation.beginConfiguration(_configPath.toString());
+        Configuration result;
+        if (Configuration.isCompiled(_configPath)) {
+            result = Configuration.load(_configPath);
+        } else {
+            result = parseConfig();
+        }
+        Instrumentation.endConfiguration(event, result);
+        return result;
+    }
+
+    /** Return the Enigma machine configuration described by the textual
+     *  configuration file _configPath. */
+    private Configuration parseConfig() {
+        _config = getInput(_configPath);
         try {
             String alphabet = _config.next();
             _alphabet = new Alphabet(alphabet);
             int numRotor = _config.nextInt();
             int numPawl = _config.nextInt();
-            _allRotors = new HashMap<String, Rotor>();
+            HashMap<String, Rotor> allRotors = new HashMap<String, Rotor>();
             rotorName = _config.next();
             while (_config.hasNext()) {
                 Rotor curr = readRotor();
                 String name = curr.name();
-                _allRotors.put(name, curr);
+                allRotors.put(name, curr);
             }
-            return new Machine(_alphabet, numRotor, numPawl, _allRotors);
+            return new Configuration(_alphabet, numRotor, numPawl, allRotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
+        } finally {
+            _config.close();
         }
     }
 
@@ -154,60 +646,86 @@ public final class Main {
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] input = settings.split(" ");
-        if (!input[0].equals("*")) {
-            throw error("Input format is off.");
-        }
-        String[] rotors = new String[M.numRotors()];
-        for (int i = 1; i <= M.numRotors(); i++) {
-            String curr = input[i];
-            rotors[i - 1] = curr;
-        }
-        for (int i = 0; i < rotors.length; i++) {
-            for (int j = 0; j < rotors.length; j++) {
-                if (rotors[i].equals(rotors[j]) && i != j) {
-                    throw error("Rotors have been repeated.");
-                }
-            }
-        }
-        M.insertRotors(rotors);
-        String setting = input[M.numRotors() + 1];
-        M.setRotors(setting);
-        String pluginfo = "";
-        for (int i = M.numRotors() + 2; i < input.length; i++) {
-            pluginfo = pluginfo.concat(input[i] + " ");
-        }
-        Permutation plugboard = new Permutation(pluginfo, _alphabet);
-        M.setPlugboard(plugboard);
+     *  which must have the format specified in the assignment.  The
+     *  parsed line is cached by M's configuration (see SettingsLine), so
+     *  a repeated settings line costs little more than setting the
+     *  rotors. */
+    static void setUp(Machine M, String settings) {
+        Instrumentation.SectionEvent event =
+            Instrumentation.beginSection(settings.length());
+        M.setUp(M.configuration().settingsLine(settings));
+        Instrumentation.endSection(event);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 1) {
-            _output.print(msg.charAt(i));
-            if (((i + 1) % 5 == 0) && (i != msg.length() - 1)) {
-                _output.print(" ");
-            }
-        }
-    }
+    /** Size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest settings line accepted in streaming mode. */
+    private static final int MAX_SETTINGS_LENGTH = 1 << 20;
+
+    /** Number of keys reported by a search. */
+    private static final int SEARCH_RESULTS = 10;
+
+    /** Greatest number of sections converted together in parallel mode. */
+    private static final int SECTION_BATCH = 4096;
+
+    /** True iff sections are converted in parallel. */
+    private boolean _parallel;
+
+    /** True iff the input file is memory-mapped. */
+    private boolean _mapped;
+
+    /** True iff the input is converted in blocks (see
+     *  processStreaming). */
+    private boolean _stream;
+
+    /** True iff the input is read, converted and written by a pipeline
+     *  of threads. */
+    private boolean _pipeline;
+
+    /** True iff machines convert through period tables. */
+    private boolean _periodTables;
+
+    /** Input file in mapped mode. */
+    private Path _inputPath;
+
+    /** Destination of output in mapped mode. */
+    private WritableByteChannel _outputChannel;
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private BufferedReader _input;
+
+    /** True iff the configuration is to be compiled rather than used. */
+    private boolean _compile;
+
+    /** Number of worker processes searching for keys, or 0 if not
+     *  searching. */
+    private int _searchWorkers;
+
+    /** Port of the search coordinator to work for, or 0 if not a search
+     *  worker. */
+    private int _workerPort;
+
+    /** Address at which to serve clients, or null if not serving. */
+    private String _serveAddress;
+
+    /** Configuration file. */
+    private Path _configPath;
+
+    /** Files opened for my arguments, to be closed by close. */
+    private final List<Closeable> _files = new ArrayList<>();
+
+    /** Destination of the compiled configuration. */
+    private Path _compiledPath;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
-
-    /** All available rotors. */
-    private HashMap<String, Rotor> _allRotors;
+    private MessageWriter _output;
 
     /** Name of the rotor. */
     private String rotorName;
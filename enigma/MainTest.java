@@ -0,0 +1,386 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the processing modes of the Main
+ *  class.
+ *  @author Melody Ma
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of applying the messages in INPUT to MACHINE in
+     *  sequential mode, followed by the message of the error reported,
+     *  if any. */
+    static String sequential(Machine machine, String input) {
+        return process(input, main -> main.processSequential(machine));
+    }
+
+    /** Return the output of applying the messages in INPUT to MACHINE in
+     *  streaming mode with blocks of BLOCKSIZE characters, followed by
+     *  the message of the error reported, if any. */
+    static String streaming(Machine machine, String input, int blockSize) {
+        return process(input,
+                       main -> main.processStreaming(machine, blockSize));
+    }
+
+    /** Return the output of applying the messages in INPUT to MACHINE in
+     *  parallel mode, followed by the message of the error reported, if
+     *  any. */
+    static String parallel(Machine machine, String input) {
+        return process(input, main -> main.processParallel(machine));
+    }
+
+    /** Return the output of applying the messages in INPUT to MACHINE in
+     *  pipeline mode, followed by the message of the error reported, if
+     *  any. */
+    static String pipeline(Machine machine, String input) {
+        return process(input, main -> main.processPipeline(machine));
+    }
+
+    /** Return the output of running MODE on a Main reading INPUT,
+     *  followed by the message of the error reported, if any. */
+    private static String process(String input, Consumer<Main> mode) {
+        StringWriter result = new StringWriter();
+        MessageWriter output = new MessageWriter(result);
+        String error = "";
+        try {
+            mode.accept(new Main(new BufferedReader(new StringReader(input)),
+                                 output));
+        } catch (EnigmaException excp) {
+            error = "Error: " + excp.getMessage();
+        }
+        output.flush();
+        return result + error;
+    }
+
+    /** Check that INPUT gives the same results in streaming mode with
+     *  blocks of each size from 2 through MAXBLOCK as in sequential
+     *  mode on the machine made by CONFIG. */
+    private static void checkStreaming(Configuration config, String input,
+                                       int maxBlock) {
+        String expected = sequential(config.newMachine(), input);
+        for (int size = 2; size <= maxBlock; size += 1) {
+            assertEquals("block size " + size, expected,
+                         streaming(config.newMachine(), input, size));
+        }
+    }
+
+    /** Return the output of applying the messages in INPUT to MACHINE
+     *  with a MappedProcessor mapping WINDOWSIZE bytes at a time,
+     *  followed by the message of the error reported, if any. */
+    static String mapped(Machine machine, String input, long windowSize)
+        throws IOException {
+        Path file = Files.createTempFile("enigma", ".in");
+        try {
+            Files.writeString(file, input);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            String error = "";
+            try {
+                new MappedProcessor(machine, file, Channels.newChannel(result),
+                                    windowSize).process();
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            }
+            return result + error;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return the configuration of a machine whose alphabet consists of
+     *  the supplementary characters U+1F600 through U+1F619. */
+    private static Configuration emojiConfiguration() {
+        String chars = emoji(0, 26);
+        Alphabet alpha = new Alphabet(chars);
+        HashMap<String, Rotor> all = new HashMap<>();
+        StringBuilder pairs = new StringBuilder();
+        for (int c = 0; c < 26; c += 2) {
+            pairs.append('(').append(emoji(c, 2)).append(')');
+        }
+        all.put("R", new Reflector("R", new Permutation(pairs.toString(),
+                                                        alpha)));
+        for (int k = 1; k <= 3; k += 1) {
+            StringBuilder cycle = new StringBuilder("(");
+            for (int c = 0; c < 26; c += 1) {
+                cycle.append(emoji((c * (2 * k + 1)) % 26, 1));
+            }
+            Permutation perm = new Permutation(cycle.append(')').toString(),
+                                               alpha);
+            all.put("M" + k, new MovingRotor("M" + k, perm, emoji(k, 1)));
+        }
+        return new Configuration(alpha, 4, 3, all);
+    }
+
+    /** Return the N supplementary characters from U+1F600 + FIRST on. */
+    private static String emoji(int first, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int c = first; c < first + n; c += 1) {
+            result.appendCodePoint(0x1F600 + c);
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkStreamingLineEnds() {
+        String input =
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\r\n"
+            + "FROM HIS SHOULDER HIAWATHA\r\n"
+            + "\r\n"
+            + "TOOK THE CAMERA OF ROSEWOOD\r"
+            + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+            + "* C Gamma II V VI ZZAB\r\n"
+            + "\r\n"
+            + "NEATLY PUT IT ALL TOGETHER\r\n\r\n"
+            + "IN ITS CASE\r\n";
+        checkStreaming(standardMachine().configuration(), input, 20);
+        checkStreaming(standardMachine().configuration(),
+                       input.substring(0, input.length() - 2), 20);
+    }
+
+    @Test
+    public void checkStreamingSurrogates() {
+        Configuration config = emojiConfiguration();
+        StringBuilder input = new StringBuilder();
+        input.append("* R M1 M2 M3 ").append(emoji(1, 3)).append(' ')
+            .append('(').append(emoji(0, 1)).append(emoji(4, 1))
+            .append(")\r\n");
+        for (int k = 0; k < 4; k += 1) {
+            for (int i = 0; i < 23 + k; i += 1) {
+                input.append(emoji((i * 11 + k) % 26, 1));
+                if (i % 7 == k) {
+                    input.append(' ');
+                }
+            }
+            input.append(k % 2 == 0 ? "\n" : "\r\n");
+        }
+        checkStreaming(config, input.toString(), 13);
+    }
+
+    @Test
+    public void checkStreamingLongLines() {
+        StringBuilder input = new StringBuilder();
+        input.append("* B Beta III IV I AXLE (HQ) (EX)\n");
+        input.append(LONG_MSG).append('\n');
+        for (int i = 0; i < LONG_MSG.length(); i += 37) {
+            input.append(LONG_MSG, i, Math.min(i + 37, LONG_MSG.length()))
+                .append(' ');
+        }
+        input.append("\n* C Gamma II V VI ZZAA\n");
+        input.append(LONG_MSG);
+        Configuration config = standardMachine().configuration();
+        String expected = sequential(config.newMachine(), input.toString());
+        for (int size : new int[] {2, 3, 64, 1 << 16}) {
+            assertEquals("block size " + size, expected,
+                         streaming(config.newMachine(), input.toString(),
+                                   size));
+        }
+    }
+
+    @Test
+    public void checkStreamingErrors() {
+        Configuration config = standardMachine().configuration();
+        String[] inputs = {
+            "",
+            "FROM HIS SHOULDER HIAWATHA\n"
+            + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS SHOULDER HIAWATHA\n",
+            "* B Beta III IV I AXLE\nFROM HIS SHOULDER HIAWATHA\n"
+            + "* B Beta III IV IV AXLE\nFROM HIS SHOULDER HIAWATHA\n",
+        };
+        for (String input : inputs) {
+            assertTrue(sequential(config.newMachine(), input)
+                       .contains("Error: "));
+            checkStreaming(config, input, 9);
+        }
+        String input =
+            "* B Beta III IV I AXLE\nFROM HIS SHOULDER\nHIAWATHA 1 HI\n";
+        String expected = sequential(config.newMachine(), input);
+        int error = expected.indexOf("Error: ");
+        for (int size = 2; size <= 20; size += 1) {
+            String actual = streaming(config.newMachine(), input, size);
+            assertTrue(actual.startsWith(expected.substring(0, error)));
+            assertTrue(actual.endsWith(expected.substring(error)));
+            assertTrue(actual.length() <= expected.length() + 10);
+        }
+    }
+
+    @Test
+    public void checkMapped() throws IOException {
+        StringBuilder input = new StringBuilder();
+        input.append("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\r\n");
+        input.append("FROM HIS SHOULDER HIAWATHA\r\n\r\n");
+        input.append("* C Gamma II V VI ZZAB\n");
+        input.append("\n");
+        input.append(LONG_MSG).append('\n');
+        for (int i = 0; i < LONG_MSG.length(); i += 37) {
+            input.append(LONG_MSG, i, Math.min(i + 37, LONG_MSG.length()))
+                .append(' ');
+        }
+        input.append("\r\n* B Beta III IV I AXLE\rTOOK THE CAMERA");
+        Configuration config = standardMachine().configuration();
+        String expected = sequential(config.newMachine(), input.toString());
+        assertFalse(expected.contains("Error"));
+        for (long size : new long[] {1, 2, 3, 7, 64, 4096, 1 << 20}) {
+            assertEquals("window size " + size, expected,
+                         mapped(config.newMachine(), input.toString(),
+                                size));
+        }
+        String bad = "* B Beta III IV I AXLE\nFROM HIS SHOULDER\nHIAWATHA 1\n"
+            + "SHOULDER\n";
+        assertEquals(sequential(config.newMachine(), bad),
+                     mapped(config.newMachine(), bad, 5));
+    }
+
+    @Test
+    public void checkParallel() {
+        Configuration config = standardMachine().configuration();
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 5000; k += 1) {
+            if (k % 3 == 0) {
+                input.append("* B Beta III IV I AXLE (HQ) (EX)\n");
+            } else {
+                input.append("* C Gamma II V VI ZZA")
+                    .append(UPPER_STRING.charAt(k % 26)).append('\n');
+            }
+            input.append(LONG_MSG, k % 100, k % 100 + k % 23).append('\n');
+            if (k % 7 == 0) {
+                input.append("\nFROM HIS SHOULDER HIAWATHA\n");
+            }
+        }
+        String expected = sequential(config.newMachine(), input.toString());
+        assertFalse(expected.contains("Error"));
+        assertEquals(expected, parallel(config.newMachine(),
+                                        input.toString()));
+        String[] bad = {
+            "",
+            "FROM HIS SHOULDER HIAWATHA\n",
+            "* B Beta III IV I AXLE\nFROM HIS SHOULDER\n"
+            + "* B Beta III IV IV AXLE\nFROM HIS SHOULDER\n",
+            "* B Beta III IV I AXLE\nFROM HIS SHOULDER\nHIAWATHA 1\n"
+            + "* B Beta III IV I AXLE\nFROM HIS SHOULDER\n",
+        };
+        for (String text : bad) {
+            assertEquals(sequential(config.newMachine(), text),
+                         parallel(config.newMachine(), text));
+        }
+    }
+
+    @Test
+    public void checkPipeline() {
+        Configuration config = standardMachine().configuration();
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 3; k += 1) {
+            input.append("* B Beta III IV I AXLE (HQ) (EX)\n");
+            input.append(LONG_MSG).append("\n\n");
+            input.append("* C Gamma II V VI ZZA")
+                .append(UPPER_STRING.charAt(k)).append("\n");
+            for (int i = 0; i < 10; i += 1) {
+                input.append(LONG_MSG).append(' ');
+            }
+            input.append("\n");
+        }
+        String expected = sequential(config.newMachine(), input.toString());
+        assertFalse(expected.contains("Error"));
+        assertEquals(expected, pipeline(config.newMachine(),
+                                        input.toString()));
+        String[] bad = {
+            "",
+            "FROM HIS SHOULDER HIAWATHA\n",
+            "* B Beta III IV I AXLE\nFROM HIS SHOULDER\n"
+            + "* B Beta III IV IV AXLE\nFROM HIS SHOULDER\n",
+            "* B Beta III IV I AXLE\nFROM HIS SHOULDER\nHIAWATHA 1\n"
+            + "* B Beta III IV I AXLE\nFROM HIS SHOULDER\n",
+        };
+        for (String text : bad) {
+            assertEquals(sequential(config.newMachine(), text),
+                         pipeline(config.newMachine(), text));
+        }
+        StringBuilder longLine =
+            new StringBuilder("* B Beta III IV I AXLE\nFROM HIS SHOULDER\n");
+        for (int i = 0; i < 10; i += 1) {
+            longLine.append(LONG_MSG);
+        }
+        longLine.append("1\nHIAWATHA\n");
+        expected = sequential(config.newMachine(), longLine.toString());
+        int error = expected.indexOf("Error: ");
+        assertTrue(error >= 0);
+        String actual = pipeline(config.newMachine(), longLine.toString());
+        assertTrue(actual.startsWith(expected.substring(0, error)));
+        assertTrue(actual.endsWith(expected.substring(error)));
+    }
+
+    @Test
+    public void checkRun() throws IOException {
+        Path config = Files.createTempFile("enigma", ".bin");
+        Path input = Files.createTempFile("enigma", ".in");
+        Path output = input.resolveSibling(input.getFileName() + ".out");
+        try {
+            standardMachine().configuration().save(config);
+            boolean[] closed = new boolean[2];
+            InputStream in = new ByteArrayInputStream(
+                ("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+                 + "FROM HIS SHOULDER HIAWATHA\n").getBytes()) {
+                    @Override
+                    public void close() {
+                        closed[0] = true;
+                    }
+                };
+            ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                    @Override
+                    public void close() {
+                        closed[1] = true;
+                    }
+                };
+            Main.run(in, out, config.toString());
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW"
+                         + System.lineSeparator(), out.toString());
+            assertFalse(closed[0] || closed[1]);
+            String text = "* B Beta III IV I AXLE\nFROM\n";
+            Files.writeString(input, text);
+            Main.run(in, out, config.toString(), input.toString(),
+                     output.toString());
+            assertEquals(sequential(standardMachine().configuration()
+                                    .newMachine(), text),
+                         Files.readString(output));
+            try {
+                Main.run(in, out, "--stream", config.toString(),
+                         config.resolveSibling("no-such-file").toString());
+                fail("read a missing file");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+}
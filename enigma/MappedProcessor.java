@@ -0,0 +1,248 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** Applies an Enigma machine to an input file of single-byte (ASCII)
+ *  characters by memory-mapping it and converting its bytes directly,
+ *  without forming a String for each message line.  The input has the
+ *  same format as for Main; settings lines are recognized by an
+ *  asterisk in their first column.  Output is formatted as by Main and
+ *  written in large blocks.  As with Main, the output of a line
+ *  containing an error is discarded, unless the line is so long that
+ *  part of its output has already been written.
+ *  @author Melody Ma
+ */
+class MappedProcessor {
+
+    /** A processor applying MACHINE to the messages in the file INPUT and
+     *  writing the results to OUTPUT. */
+    MappedProcessor(Machine machine, Path input, WritableByteChannel output) {
+        this(machine, input, output, WINDOW_SIZE);
+    }
+
+    /** A processor applying MACHINE to the messages in the file INPUT and
+     *  writing the results to OUTPUT, mapping at most WINDOWSIZE bytes of
+     *  INPUT at once. */
+    MappedProcessor(Machine machine, Path input, WritableByteChannel output,
+                    long windowSize) {
+        _machine = machine;
+        _windowSize = windowSize;
+        _input = input;
+        _output = output;
+        Alphabet alpha = machine.alphabet();
+        _indices = alpha.asciiIndices();
+        _chars = new byte[alpha.size()];
+        for (int i = 0; i < _chars.length; i++) {
+            _chars[i] = (byte) alpha.toChar(i);
+        }
+        _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /** Convert the whole input, flushing all output at the end. */
+    void process() {
+        try (FileChannel in = FileChannel.open(_input,
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += _windowSize) {
+                long length = Math.min(_windowSize, size - pos);
+                MappedByteBuffer window =
+                    in.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                scan(window, (int) length);
+            }
+            endOfInput();
+        } catch (IOException excp) {
+            throw error("could not read %s", _input);
+        } catch (EnigmaException excp) {
+            if (_lineStart >= 0) {
+                _buffer.position(_lineStart);
+            }
+            throw excp;
+        } finally {
+            drain();
+        }
+    }
+
+    /** Process the first LENGTH bytes of WINDOW, continuing from the
+     *  state left by the previous window. */
+    private void scan(ByteBuffer window, int length) {
+        for (int i = 0; i < length; i += 1) {
+            byte b = window.get(i);
+            if (_afterReturn) {
+                _afterReturn = false;
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                _afterReturn = b == '\r';
+                endOfLine();
+            } else if (_state == START) {
+                if (!_started || b == '*' && !_forced) {
+                    _state = SETTINGS;
+                    _settings.append((char) (b & 0xff));
+                } else {
+                    _state = MESSAGE;
+                    _event = Instrumentation.beginMessage();
+                    _converted = 0;
+                    message(b);
+                }
+            } else if (_state == SETTINGS) {
+                _settings.append((char) (b & 0xff));
+            } else {
+                message(b);
+            }
+        }
+    }
+
+    /** Convert the message byte B, unless it is a blank. */
+    private void message(byte b) {
+        if (b == ' ') {
+            return;
+        }
+        int index = b >= 0 ? _indices[b] : -1;
+        if (index < 0) {
+            throw error("Character is not in the alphabet.");
+        }
+        if (_group == GROUP_SIZE) {
+            put((byte) ' ');
+            _group = 0;
+        }
+        put(_chars[_machine.convert(index)]);
+        _group += 1;
+        _converted += 1;
+    }
+
+    /** Finish the current line. */
+    private void endOfLine() {
+        if (_state == SETTINGS || _state == START && !_started) {
+            String line = _settings.toString();
+            _settings.setLength(0);
+            Main.setUp(_machine, line);
+            if (!line.contains("*")) {
+                throw error("The asterisk must appear in the first column.");
+            }
+            _forced = _started;
+            _started = true;
+        } else {
+            for (int i = 0; i < LINE_SEPARATOR.length; i += 1) {
+                put(LINE_SEPARATOR[i]);
+            }
+            _forced = false;
+            if (_event != null) {
+                Instrumentation.endMessage(_event, _converted);
+                _event = null;
+            }
+        }
+        _group = 0;
+        _state = START;
+        _lineStart = _buffer.position();
+    }
+
+    /** Finish processing after the last byte of input. */
+    private void endOfInput() {
+        if (_state != START) {
+            endOfLine();
+        } else if (!_started) {
+            throw error("No settings line.");
+        }
+    }
+
+    /** Add B to the output. */
+    private void put(byte b) {
+        if (!_buffer.hasRemaining()) {
+            drain();
+            _lineStart = -1;
+        }
+        _buffer.put(b);
+    }
+
+    /** Write all buffered output. */
+    private void drain() {
+        _buffer.flip();
+        try {
+            while (_buffer.hasRemaining()) {
+                _output.write(_buffer);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _buffer.clear();
+    }
+
+    /** Line states: at the start of a line, within a settings line, and
+     *  within a message line. */
+    private static final int START = 0, SETTINGS = 1, MESSAGE = 2;
+
+    /** Number of characters in a full output group. */
+    private static final int GROUP_SIZE = 5;
+
+    /** Largest portion of the input mapped at once by default. */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Bytes written after each message line. */
+    private static final byte[] LINE_SEPARATOR =
+        System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /** The machine applied to the messages. */
+    private final Machine _machine;
+
+    /** The input file. */
+    private final Path _input;
+
+    /** Largest portion of _input mapped at once. */
+    private final long _windowSize;
+
+    /** Destination of the output. */
+    private final WritableByteChannel _output;
+
+    /** Index of each ASCII character in the alphabet, or -1. */
+    private final int[] _indices;
+
+    /** The alphabet as bytes. */
+    private final byte[] _chars;
+
+    /** Output not yet written. */
+    private final ByteBuffer _buffer;
+
+    /** Settings line being read. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** Current line state (START, SETTINGS, or MESSAGE). */
+    private int _state = START;
+
+    /** Number of characters in the last output group of this line. */
+    private int _group;
+
+    /** Position in _buffer of the output for the current line, or -1 if
+     *  some of that output has been written. */
+    private int _lineStart;
+
+    /** True iff the first settings line has been read. */
+    private boolean _started;
+
+    /** True iff the current line is a message line even if it starts
+     *  with an asterisk, as is the line after each later settings line. */
+    private boolean _forced;
+
+    /** True iff the last byte was a carriage return, so that a following
+     *  newline does not end another line. */
+    private boolean _afterReturn;
+
+    /** Instrumentation event for the current message line, or null. */
+    private Instrumentation.MessageEvent _event;
+
+    /** Number of characters converted on the current message line. */
+    private long _converted;
+}
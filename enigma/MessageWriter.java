@@ -0,0 +1,216 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A destination for converted messages that formats each message line
+ *  in groups of five characters, accumulating output in a reusable
+ *  buffer that is written out in large blocks.
+ *  @author Melody Ma
+ */
+class MessageWriter {
+
+    /** A writer sending its output, encoded in the default character set,
+     *  to OUT. */
+    MessageWriter(OutputStream out) {
+        this(new OutputStreamWriter(out));
+    }
+
+    /** A writer sending its output to OUT. */
+    MessageWriter(Writer out) {
+        _out = out;
+        _buffer = new char[BUFFER_SIZE];
+        _line = new char[BUFFER_SIZE];
+    }
+
+    /** Convert LINE with M, ignoring blanks, and write the result in
+     *  groups of five (except that the last group may have fewer
+     *  letters), followed by a line terminator.  Nothing is written if
+     *  LINE cannot be converted. */
+    void convertLine(Machine M, CharSequence line) {
+        beginLine();
+        convertPart(M, line, 0, line.length());
+        endLine();
+    }
+
+    /** Begin a message line, to be converted in parts by convertPart and
+     *  ended by endLine, so that a line of any length can be converted
+     *  in bounded memory. */
+    void beginLine() {
+        _event = Instrumentation.beginMessage();
+        _column = 0;
+        _converted = 0;
+    }
+
+    /** Convert the characters of TEXT from START up to (not including)
+     *  END with M, ignoring blanks, as the next part of the current
+     *  line, and write the result, continuing the line's groups of
+     *  five.  Nothing is written if the part cannot be converted.  If
+     *  M's alphabet has supplementary characters, the part must not end
+     *  between the two chars of one. */
+    void convertPart(Machine M, CharSequence text, int start, int end) {
+        if (M.alphabet().hasSupplementary()) {
+            convertCodePoints(M, text, start, end);
+            return;
+        }
+        int n = 0;
+        for (int i = start; i < end; i += 1) {
+            char c = text.charAt(i);
+            if (c != ' ') {
+                if (n == _line.length) {
+                    _line = Arrays.copyOf(_line, 2 * n);
+                }
+                _line[n] = c;
+                n += 1;
+            }
+        }
+        M.convert(_line, 0, n, _line, 0);
+        for (int i = 0; i < n; i += 1) {
+            putGrouped(_line[i]);
+        }
+        _converted += n;
+    }
+
+    /** Write the characters of ALPHABET whose indices are in INDICES
+     *  from START up to (not including) END as the next part of the
+     *  current line, already converted, continuing the line's groups of
+     *  five. */
+    void writePart(Alphabet alphabet, int[] indices, int start, int end) {
+        boolean points = alphabet.hasSupplementary();
+        for (int i = start; i < end; i += 1) {
+            int c = alphabet.toCodePoint(indices[i]);
+            if (!points || Character.isBmpCodePoint(c)) {
+                putGrouped((char) c);
+            } else {
+                putGrouped(Character.highSurrogate(c));
+                put(Character.lowSurrogate(c));
+            }
+        }
+        _converted += end - start;
+    }
+
+    /** End the current line, writing a line terminator. */
+    void endLine() {
+        write(LINE_SEPARATOR);
+        Instrumentation.endMessage(_event, _converted);
+        _event = null;
+    }
+
+    /** Convert the characters of TEXT from START to END with M as for
+     *  convertPart, except that the characters converted and grouped are
+     *  code points, so that M's alphabet may have supplementary
+     *  characters. */
+    private void convertCodePoints(Machine M, CharSequence text,
+                                   int start, int end) {
+        if (_points == null) {
+            _points = new int[BUFFER_SIZE];
+        }
+        int n = 0;
+        for (int i = start; i < end; ) {
+            int c = Character.codePointAt(text, i);
+            i += Character.charCount(c);
+            if (c != ' ') {
+                if (n == _points.length) {
+                    _points = Arrays.copyOf(_points, 2 * n);
+                }
+                _points[n] = c;
+                n += 1;
+            }
+        }
+        M.convertCodePoints(_points, 0, n);
+        for (int i = 0; i < n; i += 1) {
+            if (Character.isBmpCodePoint(_points[i])) {
+                putGrouped((char) _points[i]);
+            } else {
+                putGrouped(Character.highSurrogate(_points[i]));
+                put(Character.lowSurrogate(_points[i]));
+            }
+        }
+        _converted += n;
+    }
+
+    /** Add C to the output as the next character of the current line,
+     *  preceded by a blank if it begins a group of five other than the
+     *  first. */
+    private void putGrouped(char c) {
+        if (_column == 5) {
+            put(' ');
+            _column = 0;
+        }
+        put(c);
+        _column += 1;
+    }
+
+    /** Write TEXT unchanged. */
+    void write(String text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            put(text.charAt(i));
+        }
+    }
+
+    /** Add C to the output. */
+    private void put(char c) {
+        if (_count == _buffer.length) {
+            drain();
+        }
+        _buffer[_count] = c;
+        _count += 1;
+    }
+
+    /** Hand the contents of my buffer to the underlying writer. */
+    private void drain() {
+        try {
+            _out.write(_buffer, 0, _count);
+            _count = 0;
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Write out all buffered output. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Size of the output block and initial size of the line buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Terminator written after each message line. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Destination of my output. */
+    private final Writer _out;
+
+    /** Output not yet handed to _out. */
+    private final char[] _buffer;
+
+    /** Number of characters in _buffer. */
+    private int _count;
+
+    /** Scratch space for the characters of the current message line or
+     *  part of one. */
+    private char[] _line;
+
+    /** Scratch space for the code points of the current message line,
+     *  allocated when first needed. */
+    private int[] _points;
+
+    /** Event for the current message line, or null if none is begun. */
+    private Instrumentation.MessageEvent _event;
+
+    /** Number of characters of the current line in its last group. */
+    private int _column;
+
+    /** Number of characters of the current line converted. */
+    private long _converted;
+}
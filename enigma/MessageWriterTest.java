@@ -0,0 +1,102 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MessageWriter class.
+ *  @author Melody Ma
+ */
+public class MessageWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Line terminator written after each message line. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return the output of writing a line of the first N letters of
+     *  UPPER, given as indices, in parts ending at each of ENDS (which
+     *  are increasing and end with N). */
+    private static String writeLetters(int n, int... ends) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            indices[i] = i % UPPER.size();
+        }
+        StringWriter result = new StringWriter();
+        MessageWriter output = new MessageWriter(result);
+        output.beginLine();
+        int start = 0;
+        for (int end : ends) {
+            output.writePart(UPPER, indices, start, end);
+            start = end;
+        }
+        output.endLine();
+        output.flush();
+        return result.toString();
+    }
+
+    @Test
+    public void checkGroups() {
+        assertEquals(NL, writeLetters(0, 0));
+        assertEquals("ABC" + NL, writeLetters(3, 3));
+        assertEquals("ABCDE" + NL, writeLetters(5, 5));
+        assertEquals("ABCDE FG" + NL, writeLetters(7, 7));
+        assertEquals("ABCDE FGHIJ" + NL, writeLetters(10, 10));
+        assertEquals("ABCDE FGHIJ K" + NL, writeLetters(11, 11));
+    }
+
+    @Test
+    public void checkGroupsAcrossParts() {
+        assertEquals("ABCDE FG" + NL, writeLetters(7, 2, 5, 7));
+        assertEquals("ABCDE FGHIJ" + NL, writeLetters(10, 5, 5, 10));
+        assertEquals("ABCDE FGHIJ K" + NL, writeLetters(11, 3, 10, 11));
+    }
+
+    @Test
+    public void checkConvertedLines() {
+        StringWriter result = new StringWriter();
+        MessageWriter output = new MessageWriter(result);
+        Machine machine = standardMachine();
+        output.convertLine(machine, "FROM HIS SHOULDER HIAWATHA");
+        output.convertLine(machine, "");
+        machine.setRotors("AXLE");
+        output.beginLine();
+        output.convertPart(machine, "FROM HI", 0, 7);
+        output.convertPart(machine, "S SHOULDER", 0, 10);
+        output.endLine();
+        machine.setRotors("AXLE");
+        output.convertLine(machine, "FROMH ISSHO");
+        output.flush();
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL + NL
+                     + "QVPQS OKOIL PUBKJ" + NL
+                     + "QVPQS OKOIL" + NL, result.toString());
+    }
+
+    @Test
+    public void checkSupplementaryGroups() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0; c < 8; c += 1) {
+            chars.appendCodePoint(0x1F600 + c);
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        StringWriter result = new StringWriter();
+        MessageWriter output = new MessageWriter(result);
+        output.beginLine();
+        output.writePart(alpha, new int[] {0, 1, 2, 3, 4, 5, 6}, 0, 7);
+        output.endLine();
+        output.flush();
+        int split = chars.offsetByCodePoints(0, 5);
+        assertEquals(chars.substring(0, split) + " "
+                     + chars.substring(split, chars.offsetByCodePoints(0, 7))
+                     + NL, result.toString());
+    }
+
+}
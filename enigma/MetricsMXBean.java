@@ -0,0 +1,35 @@
+package enigma;
+
+/** Counters describing the work done by the Enigma simulator in this
+ *  JVM, published through JMX as enigma:type=Metrics when the system
+ *  property enigma.metrics is true (see Instrumentation).
+ *  @author Melody Ma
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of configurations loaded. */
+    long getConfigurationsLoaded();
+
+    /** Return the number of settings lines applied to machines. */
+    long getSectionsProcessed();
+
+    /** Return the total time spent applying settings lines to machines,
+     *  in nanoseconds. */
+    long getSectionSetupNanos();
+
+    /** Return the number of message lines converted. */
+    long getMessagesConverted();
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the characters converted per second of time spent
+     *  converting messages. */
+    double getThroughput();
+
+    /** Return the counts of message conversions by latency: entry 0
+     *  counts those taking under 1 microsecond, and entry K > 0 those
+     *  taking from 2^(K-1) up to 2^K microseconds, except that the last
+     *  entry counts all longer conversions too. */
+    long[] getLatencyHistogram();
+}
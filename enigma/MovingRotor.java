@@ -15,6 +15,30 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchAt = new boolean[perm.size()];
+        notches.codePoints().forEach(c -> {
+            if (perm.alphabet().containsCodePoint(c)) {
+                _notchAt[perm.alphabet().codePointToInt(c)] = true;
+            }
+        });
+    }
+
+    /** A moving rotor with the same name, wiring and notches as ORIGINAL,
+     *  in its 0 setting. */
+    MovingRotor(MovingRotor original) {
+        super(original);
+        _notches = original._notches;
+        _notchAt = original._notchAt;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
+    }
+
+    /** Return the characters at which I have notches. */
+    String notches() {
+        return _notches;
     }
 
     @Override
@@ -23,13 +47,8 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        int index = setting() % size();
-        char curr = alphabet().toChar(index);
-        if (_notches.contains(String.valueOf(curr))) {
-            return true;
-        }
-        return false;
+    boolean notchAt(int posn) {
+        return _notchAt[posn];
     }
 
     @Override
@@ -45,4 +64,7 @@ class MovingRotor extends Rotor {
     /** Notches of the rotor. */
     private String _notches;
 
+    /** _notchAt[K] is true iff the K-th character is one of my notches. */
+    private final boolean[] _notchAt;
+
 }
@@ -0,0 +1,293 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A table of log-probabilities of the n-grams (sequences of N
+ *  characters) of an alphabet, used to score candidate decryptions.  The
+ *  n-gram c1 c2 ... cN is stored at index
+ *  c1 * size^(N-1) + c2 * size^(N-2) + ... + cN, where the ci are
+ *  alphabet indices; n-grams never seen get a small floor value.
+ *
+ *  A model can be saved to a file and loaded back by memory-mapping it,
+ *  so that processes scoring with the same large table share one copy
+ *  in the page cache instead of each holding it on the heap.  The file
+ *  holds, as little-endian 32-bit values, the number FILE_MAGIC, N, the
+ *  alphabet size, the code of each alphabet character, and then the
+ *  table itself as floats.
+ *  @author Melody Ma
+ */
+class NgramModel {
+
+    /** Largest number of entries in a model, whose table of 4-byte
+     *  entries then takes 512 MiB.  Models are built in place in the
+     *  table, so this is also the most memory building one takes. */
+    static final long MAX_ENTRIES = 1L << 27;
+
+    /** Number identifying a saved model. */
+    static final int FILE_MAGIC = 0x4D52474E;
+
+    /** A model for N-grams of ALPHA, where the log-probability of n-gram K
+     *  is LOGPROBS[K]. */
+    NgramModel(Alphabet alpha, int n, float[] logProbs) {
+        this(alpha, n, FloatBuffer.wrap(logProbs));
+    }
+
+    /** A model for N-grams of ALPHA, where the log-probability of n-gram K
+     *  is LOGPROBS.get(K).  LOGPROBS is used directly, not copied. */
+    NgramModel(Alphabet alpha, int n, FloatBuffer logProbs) {
+        if (n < 1) {
+            throw error("n-grams must have at least one character.");
+        }
+        _alphabet = alpha;
+        _n = n;
+        _size = alpha.size();
+        _high = entries(alpha.size(), n - 1);
+        if (logProbs.limit() != (long) _high * _size) {
+            throw error("n-gram table has the wrong size.");
+        }
+        _logProbs = logProbs;
+    }
+
+    /** Return the number of N-grams over an alphabet of SIZE
+     *  characters, which must be at most MAX_ENTRIES. */
+    static int entries(int size, int n) {
+        long result = 1;
+        for (int i = 0; i < n; i += 1) {
+            result *= size;
+            if (result > MAX_ENTRIES) {
+                throw error("n-gram table would be too large.");
+            }
+        }
+        return (int) result;
+    }
+
+    /** Return a model of N-grams of ALPHA from the counts in IN, one
+     *  n-gram per line, followed by its count. */
+    static NgramModel fromCounts(Alphabet alpha, int n, Reader in) {
+        float[] counts = new float[entries(alpha.size(), n)];
+        double total = 0;
+        try {
+            BufferedReader lines = new BufferedReader(in);
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                if (fields.length != 2 || fields[0].length() != n) {
+                    throw error("bad n-gram count: %s", line);
+                }
+                int index = 0;
+                for (int i = 0; i < n; i += 1) {
+                    index = index * alpha.size()
+                        + alpha.toInt(fields[0].charAt(i));
+                }
+                double count = Double.parseDouble(fields[1]);
+                counts[index] += count;
+                total += count;
+            }
+        } catch (IOException excp) {
+            throw error("could not read n-gram counts");
+        } catch (NumberFormatException excp) {
+            throw error("bad n-gram count: %s", excp.getMessage());
+        }
+        checkTotal(total);
+        for (int i = 0; i < counts.length; i += 1) {
+            counts[i] = logProbability(counts[i], total);
+        }
+        return new NgramModel(alpha, n, counts);
+    }
+
+    /** Return a model of N-grams of ALPHA counted in the text IN.
+     *  Letters are converted to upper case if that puts them in ALPHA;
+     *  other characters not in ALPHA are skipped.  The n-grams are
+     *  counted as ints in the buffer that then holds their
+     *  log-probabilities. */
+    static NgramModel fromCorpus(Alphabet alpha, int n, Reader in) {
+        int size = alpha.size();
+        ByteBuffer table =
+            ByteBuffer.allocate(entries(size, n) * Float.BYTES)
+            .order(ByteOrder.nativeOrder());
+        IntBuffer counts = table.asIntBuffer();
+        int high = counts.limit() / size;
+        long total = 0;
+        try {
+            BufferedReader text = new BufferedReader(in);
+            int index = 0, length = 0;
+            for (int c = text.read(); c >= 0; c = text.read()) {
+                char ch = (char) c;
+                if (!alpha.contains(ch)) {
+                    ch = Character.toUpperCase(ch);
+                }
+                if (alpha.contains(ch)) {
+                    index = (index % high) * size + alpha.toInt(ch);
+                    length += 1;
+                    if (length >= n) {
+                        counts.put(index, counts.get(index) + 1);
+                        total += 1;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read corpus");
+        }
+        checkTotal(total);
+        FloatBuffer logProbs = table.asFloatBuffer();
+        for (int i = 0; i < counts.limit(); i += 1) {
+            logProbs.put(i, logProbability(counts.get(i), total));
+        }
+        return new NgramModel(alpha, n, logProbs);
+    }
+
+    /** Return the model of n-grams of ALPHA saved in the file FILE,
+     *  mapping its table into memory rather than reading it. */
+    static NgramModel load(Alphabet alpha, Path file) {
+        try (FileChannel in = FileChannel.open(file,
+                                               StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw error("%s is not an n-gram table", file);
+            }
+            ByteBuffer data =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < 3 * Integer.BYTES
+                || data.getInt() != FILE_MAGIC) {
+                throw error("%s is not an n-gram table", file);
+            }
+            int n = data.getInt();
+            int size = data.getInt();
+            if (size != alpha.size()
+                || data.remaining() < (long) size * Integer.BYTES) {
+                throw error("n-gram table %s is for another alphabet", file);
+            }
+            for (int i = 0; i < size; i += 1) {
+                if (data.getInt() != alpha.toCodePoint(i)) {
+                    throw error("n-gram table %s is for another alphabet",
+                                file);
+                }
+            }
+            if (n < 1 || data.remaining()
+                != (long) entries(size, n) * Float.BYTES) {
+                throw error("n-gram table %s is truncated", file);
+            }
+            return new NgramModel(alpha, n, data.slice()
+                                  .order(ByteOrder.LITTLE_ENDIAN)
+                                  .asFloatBuffer());
+        } catch (IOException excp) {
+            throw error("could not read n-gram table %s", file);
+        }
+    }
+
+    /** Save me to the file FILE, in the form read by load. */
+    void save(Path file) {
+        int entries = _logProbs.limit();
+        ByteBuffer data =
+            ByteBuffer.allocate((3 + _size) * Integer.BYTES
+                                + CHUNK * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(FILE_MAGIC).putInt(_n).putInt(_size);
+        for (int i = 0; i < _size; i += 1) {
+            data.putInt(_alphabet.toCodePoint(i));
+        }
+        try (FileChannel out = FileChannel.open(file,
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int k = 0; k < entries || data.position() > 0; ) {
+                while (k < entries && data.remaining() >= Float.BYTES) {
+                    data.putFloat(_logProbs.get(k));
+                    k += 1;
+                }
+                data.flip();
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+                data.clear();
+            }
+        } catch (IOException excp) {
+            throw error("could not write n-gram table %s", file);
+        }
+    }
+
+    /** Check that TOTAL, the number of n-grams counted, is positive. */
+    private static void checkTotal(double total) {
+        if (total <= 0) {
+            throw error("no n-grams counted");
+        }
+    }
+
+    /** Return the base-10 logarithm of the relative frequency of an
+     *  n-gram counted COUNT times among TOTAL, giving unseen n-grams a
+     *  floor well below any seen one. */
+    private static float logProbability(double count, double total) {
+        return (float) Math.log10((count > 0 ? count : FLOOR) / total);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the log-probability of n-gram number INDEX. */
+    float logProb(int index) {
+        return _logProbs.get(index);
+    }
+
+    /** Return the sum of the log-probabilities of the n-grams of the
+     *  alphabet indices TEXT from START up to (not including) END. */
+    double score(int[] text, int start, int end) {
+        FloatBuffer logProbs = _logProbs;
+        int size = _size, high = _high, n = _n;
+        int index = 0;
+        int first = Math.min(start + n - 1, end);
+        for (int i = start; i < first; i += 1) {
+            index = index * size + text[i];
+        }
+        double sum = 0;
+        for (int i = first; i < end; i += 1) {
+            index = index * size + text[i];
+            sum += logProbs.get(index);
+            index -= text[i - n + 1] * high;
+        }
+        return sum;
+    }
+
+    /** Number of table entries written at a time by save. */
+    private static final int CHUNK = 1 << 14;
+
+    /** Count given to unseen n-grams when taking logarithms. */
+    private static final double FLOOR = 0.01;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of (N-1)-grams, which is the place value of the first
+     *  character of an n-gram in its index. */
+    private final int _high;
+
+    /** Log-probability of each n-gram, on the heap or mapped from a
+     *  file. */
+    private final FloatBuffer _logProbs;
+}
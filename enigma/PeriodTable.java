@@ -0,0 +1,157 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The conversions of a machine's rotors, without the plugboard, at
+ *  each keystroke from some starting state until their settings repeat.
+ *  Row R holds the scrambler permutation in effect for keystroke R
+ *  (numbering from 0), i.e. after R + 1 advances.  Because the settings
+ *  at each keystroke depend only on those at the one before, the rows
+ *  from tail() on repeat forever: keystroke rows() is converted like
+ *  keystroke tail(), and so on.  For three moving 26-letter rotors with
+ *  the usual notches, there are 16,900 rows of 26 entries.
+ *
+ *  The entries are stored as bytes when the alphabet has at most 256
+ *  characters and as chars otherwise, like the tables of a Rotor.
+ *  @author Melody Ma
+ */
+class PeriodTable {
+
+    /** Return the period table for MACHINE, whose rotors must be
+     *  inserted, starting from its current settings; or null if the
+     *  table would have more than MAX_ENTRIES entries (or its settings
+     *  cannot be numbered by a long).  MACHINE is not changed. */
+    static PeriodTable build(Machine machine) {
+        int size = machine.alphabet().size();
+        int slots = machine.numRotors();
+        try {
+            long states = 1;
+            for (int i = 1; i < slots; i += 1) {
+                states = Math.multiplyExact(states, size);
+            }
+        } catch (ArithmeticException excp) {
+            return null;
+        }
+        if (size > Character.MAX_VALUE + 1) {
+            return null;
+        }
+        Machine scratch = machine.copy();
+        scratch.usePeriodTable(false);
+        int maxRows = MAX_ENTRIES / size;
+        int[] row = new int[size];
+        byte[] bytes = new byte[0];
+        char[] chars = new char[0];
+        int capacity = 0;
+        HashMap<Long, Integer> seen = new HashMap<>();
+        for (int r = 0; ; r += 1) {
+            scratch.advanceRotors();
+            long key = 0;
+            for (int i = 1; i < slots; i += 1) {
+                key = key * size + scratch.rotor(i).setting();
+            }
+            Integer first = seen.putIfAbsent(key, r);
+            if (first != null) {
+                return new PeriodTable(size, r, first,
+                                       size <= BYTE_TABLE_SIZE ? bytes : null,
+                                       chars);
+            } else if (r == maxRows) {
+                return null;
+            }
+            if (r == capacity) {
+                capacity = Math.min(Math.max(2 * r, INITIAL_ROWS), maxRows);
+                if (size <= BYTE_TABLE_SIZE) {
+                    bytes = Arrays.copyOf(bytes, capacity * size);
+                } else {
+                    chars = Arrays.copyOf(chars, capacity * size);
+                }
+            }
+            scratch.scramblerTable(row);
+            for (int c = 0, k = r * size; c < size; c += 1, k += 1) {
+                if (size <= BYTE_TABLE_SIZE) {
+                    bytes[k] = (byte) row[c];
+                } else {
+                    chars[k] = (char) row[c];
+                }
+            }
+        }
+    }
+
+    /** A table for an alphabet of SIZE characters with ROWS rows,
+     *  repeating from row TAIL, whose entries are the first ROWS * SIZE
+     *  of BYTES, if that is non-null, and otherwise of CHARS. */
+    private PeriodTable(int size, int rows, int tail,
+                        byte[] bytes, char[] chars) {
+        _size = size;
+        _rows = rows;
+        _tail = tail;
+        if (bytes != null) {
+            _bytes = Arrays.copyOf(bytes, rows * size);
+        } else {
+            _chars = Arrays.copyOf(chars, rows * size);
+        }
+    }
+
+    /** Return the number of rows. */
+    int rows() {
+        return _rows;
+    }
+
+    /** Return the first row of the repeating part of the table. */
+    int tail() {
+        return _tail;
+    }
+
+    /** Return the row for the keystroke N keystrokes after the one
+     *  converted by row ROW. */
+    int after(int row, long n) {
+        long k = row + n;
+        if (k < _rows) {
+            return (int) k;
+        }
+        return (int) (_tail + (k - _tail) % (_rows - _tail));
+    }
+
+    /** Return the row following ROW. */
+    int next(int row) {
+        return row + 1 < _rows ? row + 1 : _tail;
+    }
+
+    /** Return the conversion of index C by the rotors at the keystroke
+     *  of row ROW. */
+    int convert(int row, int c) {
+        byte[] bytes = _bytes;
+        if (bytes != null) {
+            return bytes[row * _size + c] & BYTE_MASK;
+        }
+        return _chars[row * _size + c];
+    }
+
+    /** Largest number of entries in a table (4MB of bytes). */
+    static final int MAX_ENTRIES = 1 << 22;
+
+    /** Number of rows for which space is first allocated. */
+    private static final int INITIAL_ROWS = 1024;
+
+    /** Largest alphabet size whose conversions fit in a byte. */
+    private static final int BYTE_TABLE_SIZE = 256;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rows. */
+    private final int _rows;
+
+    /** First row of the repeating part. */
+    private final int _tail;
+
+    /** Entries for small alphabets: the conversion of C at row R is at
+     *  index R * _size + C. */
+    private byte[] _bytes;
+
+    /** Entries for larger alphabets, arranged as _bytes. */
+    private char[] _chars;
+}
@@ -21,20 +21,74 @@ class Permutation {
         if (Objects.equals(cycles, "()")) {
             throw error("Wrong cycles format.");
         }
+        int size = _alphabet.size();
+        _forward = new int[size];
+        _inverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
         String storage = _cycle.replace("(", "");
         String finalcycle = storage.replace(")", " ");
-        _cycleArray = finalcycle.split(" ");
+        for (String cycle : finalcycle.trim().split("\\s+")) {
+            if (!cycle.isEmpty()) {
+                addCycle(cycle);
+            }
+        }
+        fillChars();
+    }
+
+    /** Set this Permutation to the one on ALPHABET that takes index K to
+     *  FORWARD[K] and whose inverse takes K to INVERSE[K].  The arrays
+     *  are used directly, not copied. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        int size = alphabet.size();
+        if (forward.length != size || inverse.length != size) {
+            throw error("Permutation table has the wrong size.");
+        }
+        for (int i = 0; i < size; i++) {
+            if (forward[i] < 0 || forward[i] >= size
+                || inverse[forward[i]] != i) {
+                throw error("Permutation tables do not match.");
+            }
+        }
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        fillChars();
+    }
+
+    /** Fill in the character images and preimages of the characters of
+     *  my alphabet, unless it has supplementary code points, which chars
+     *  cannot hold. */
+    private void fillChars() {
+        if (_alphabet.hasSupplementary()) {
+            return;
+        }
+        int size = size();
+        _forwardChars = new char[size];
+        _inverseChars = new char[size];
+        for (int i = 0; i < size; i++) {
+            _forwardChars[i] = _alphabet.toChar(_forward[i]);
+            _inverseChars[i] = _alphabet.toChar(_inverse[i]);
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm (each c being a code point). */
     private void addCycle(String cycle) {
-        String[] newCycle = new String[_cycleArray.length + 1];
-        for (int i = 0; i < newCycle.length - 1; i++) {
-            newCycle[i] = _cycleArray[i];
+        int[] points = cycle.codePoints().toArray();
+        int length = points.length;
+        for (int i = 0; i < length; i++) {
+            int from = _alphabet.codePointToInt(points[i]);
+            int to = _alphabet.codePointToInt(points[(i + 1) % length]);
+            if (_forward[from] != from || _inverse[to] != to) {
+                throw error("Character %c appears in more than one cycle.",
+                            points[i]);
+            }
+            _forward[from] = to;
+            _inverse[to] = from;
         }
-        newCycle[_cycleArray.length] = cycle;
-        _cycleArray = newCycle;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -48,99 +102,36 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int pWrap = wrap(p);
-        if (pWrap >= _alphabet.size()) {
-            throw error("Index not contained in the alphabet.");
-        }
-        char letter = _alphabet.toChar(pWrap);
-        for (int i = 0; i < _cycleArray.length; i++) {
-            if (_cycleArray[i].contains(String.valueOf(letter))) {
-                int index = _cycleArray[i].indexOf(letter);
-                int length = _cycleArray[i].length();
-                if (index + 1 < length) {
-                    char result = _cycleArray[i].charAt(index + 1);
-                    int perm = _alphabet.toInt(result);
-                    return perm;
-                } else {
-                    char result = _cycleArray[i].charAt(0);
-                    int perm = _alphabet.toInt(result);
-                    return perm;
-                }
-            }
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int cWrap = wrap(c);
-        if (cWrap >= _alphabet.size()) {
-            throw error("Index not contained in the alphabet.");
-        }
-        char letter = _alphabet.toChar(cWrap);
-        for (int i = 0; i < _cycleArray.length; i++) {
-            if (_cycleArray[i].contains(String.valueOf(letter))) {
-                int index = _cycleArray[i].indexOf(letter);
-                int length = _cycleArray[i].length();
-                if (index - 1 >= 0) {
-                    char result = _cycleArray[i].charAt(index - 1);
-                    int perm = _alphabet.toInt(result);
-                    return perm;
-                } else {
-                    int pos = _cycleArray[i].length() - 1;
-                    char result = _cycleArray[i].charAt(pos);
-                    int perm = _alphabet.toInt(result);
-                    return perm;
-                }
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (!_alphabet.contains(p)) {
-            throw error("Character not in the alphabet.");
-        }
-        for (int i = 0; i < _cycleArray.length; i++) {
-            if (_cycleArray[i].contains(String.valueOf(p))) {
-                int index = _cycleArray[i].indexOf(p);
-                int length = _cycleArray[i].length();
-                int newIndex = (index + 1) % length;
-                char letter = _cycleArray[i].charAt(newIndex);
-                return letter;
-            }
+        if (_forwardChars == null) {
+            return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
         }
-        return p;
+        return _forwardChars[_alphabet.toInt(p)];
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!_alphabet.contains(c)) {
-            throw error("Character not in the alphabet.");
-        }
-        for (int i = 0; i < _cycleArray.length; i++) {
-            if (_cycleArray[i].contains(String.valueOf(c))) {
-                int index = _cycleArray[i].indexOf(c);
-                int length = _cycleArray[i].length();
-                if (index - 1 >= 0) {
-                    char letter = _cycleArray[i].charAt(index - 1);
-                    return letter;
-                } else {
-                    char letter = _cycleArray[i].charAt(length - 1);
-                    return letter;
-                }
-            }
+        if (_inverseChars == null) {
+            return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
         }
-        return c;
+        return _inverseChars[_alphabet.toInt(c)];
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -151,17 +142,9 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int cycleSize = 0;
-        for (int i = 0; i < _cycleArray.length; i++) {
-            cycleSize += _cycleArray[i].length();
-        }
-        if (cycleSize != _alphabet.size()) {
-            return false;
-        } else if (cycleSize == _alphabet.size()) {
-            for (String element : _cycleArray) {
-                if (element.length() == 1) {
-                    return false;
-                }
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
+                return false;
             }
         }
         return true;
@@ -170,9 +153,21 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Cycle of this permutation in array of strings. */
-    private String[] _cycleArray;
+    /** Index of the image of each index under this permutation. */
+    private int[] _forward;
+
+    /** Index of the preimage of each index under this permutation. */
+    private int[] _inverse;
+
+    /** Character image of the K-th character of the alphabet, or null
+     *  if the alphabet has supplementary code points. */
+    private char[] _forwardChars;
+
+    /** Character preimage of the K-th character of the alphabet, or
+     *  null as for _forwardChars. */
+    private char[] _inverseChars;
 
-    /** Cycle of this permutation in string. */
+    /** Cycle of this permutation in string, or null if it was given by
+     *  tables. */
     private String _cycle;
 }
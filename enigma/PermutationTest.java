@@ -142,6 +142,22 @@ public class PermutationTest {
         p.permute(5);
     }
 
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedCharacter() {
+        Alphabet alphabet = new Alphabet("ABCDE");
+        new Permutation("(AB) (CA)", alphabet);
+    }
+
+    @Test
+    public void checkNavalRotors() {
+        for (String name : NAVALA.keySet()) {
+            if (NAVALA_MAP.containsKey(name)) {
+                perm = new Permutation(NAVALA.get(name), UPPER);
+                checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+            }
+        }
+    }
+
     @Test
     public void invertCharTest() {
         String cycle1 = "(BACD)";
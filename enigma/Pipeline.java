@@ -0,0 +1,393 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** Converts input as Main's processSequential does, but in three stages
+ *  that run at once: a reader thread that reads lines, parses settings
+ *  lines and translates message characters (less blanks) to alphabet
+ *  indices; the converting thread, which applies the settings and runs
+ *  the machine over the indices; and a writer thread that translates
+ *  the results back to characters, groups them in fives and writes
+ *  them.  The stages hand each other Blocks, of which a fixed number
+ *  are allocated at the start and passed around a ring of bounded
+ *  queues (free, read, converted and back to free), so that a stage
+ *  that gets ahead waits for the one behind it, and reading and writing
+ *  overlap with conversion.
+ *
+ *  The output, and any error, are those of processSequential, except
+ *  that a message line longer than a block that contains a character
+ *  not in the alphabet may have part of its conversion written before
+ *  the error is reported.
+ *  @author Melody Ma
+ */
+class Pipeline {
+
+    /** A pipeline converting the input from INPUT with MACHINE and
+     *  writing the results to OUTPUT. */
+    Pipeline(Machine machine, BufferedReader input, MessageWriter output) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _input = input;
+        _output = output;
+        _free = new ArrayBlockingQueue<>(BLOCKS);
+        _read = new ArrayBlockingQueue<>(BLOCKS);
+        _converted = new ArrayBlockingQueue<>(BLOCKS);
+        for (int i = 0; i < BLOCKS; i += 1) {
+            _free.add(new Block());
+        }
+    }
+
+    /** Convert all my input, returning when all of the output has been
+     *  handed to my MessageWriter.  Throws the first error in the input,
+     *  after writing the output for everything before it, or an error
+     *  in writing the output. */
+    void process() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread writer = new Thread(this::write, "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        _converter = Thread.currentThread();
+        reader.start();
+        writer.start();
+        boolean converted = false;
+        try {
+            convert();
+            converted = true;
+        } catch (InterruptedException excp) {
+            /* The writer has failed: report its error below. */
+        } finally {
+            reader.interrupt();
+            if (!converted) {
+                writer.interrupt();
+            }
+            join(writer);
+            join(reader);
+            Thread.interrupted();
+        }
+        if (_writeError != null) {
+            throw _writeError;
+        } else if (_inputError != null) {
+            throw _inputError;
+        }
+    }
+
+    /** Wait for THREAD, which has been told to stop or will stop of its
+     *  own accord, to finish. */
+    private static void join(Thread thread) {
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                /* Keep waiting: THREAD is about to finish. */
+            }
+        }
+    }
+
+    /** The body of the reader thread: read my input into blocks and hand
+     *  them to the converter until the input or an error is reached.
+     *  The last block handed on is marked as such. */
+    private void read() {
+        try {
+            _block = _free.take();
+            _block.clear();
+            try {
+                readSections();
+            } catch (EnigmaException excp) {
+                _block.truncate(_lineSize, _lineSegments);
+                _block.error = excp;
+            }
+            _block.last = true;
+            _read.put(_block);
+        } catch (InterruptedException excp) {
+            /* The pipeline is being shut down. */
+        }
+    }
+
+    /** Read my input, adding the settings and message lines to blocks in
+     *  the order processSequential would apply them. */
+    private void readSections() throws InterruptedException {
+        String setting = nextLine();
+        if (setting == null) {
+            throw error("No settings line.");
+        }
+        addSettings(setting);
+        if (!setting.contains("*")) {
+            throw error("The asterisk must appear in the first column.");
+        }
+        for (String curr = nextLine(); curr != null; curr = nextLine()) {
+            if (curr.contains("*")) {
+                addSettings(curr);
+                curr = nextLine();
+                if (curr == null) {
+                    break;
+                }
+            }
+            addMessage(curr);
+        }
+    }
+
+    /** Return the next line of input, or null if there is none. */
+    private String nextLine() {
+        try {
+            return _input.readLine();
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Add a segment applying settings LINE to the current block. */
+    private void addSettings(String line) throws InterruptedException {
+        SettingsLine settings =
+            _machine.configuration().settingsLine(line);
+        if (_block.segments == Block.SEGMENTS) {
+            nextBlock();
+        }
+        _block.addSettings(line, settings);
+        markLine();
+    }
+
+    /** Add the indices of the characters of message LINE, less blanks,
+     *  to blocks, ending with the segment that ends the line.  The line
+     *  begins in a block with room for two segments, so that there is
+     *  always one for the part of the line in each block. */
+    private void addMessage(String line) throws InterruptedException {
+        if (_block.segments >= Block.SEGMENTS - 1) {
+            nextBlock();
+        }
+        boolean points = _alphabet.hasSupplementary();
+        int[] data = _block.data;
+        int size = _block.size;
+        for (int i = 0; i < line.length(); ) {
+            int c;
+            if (points) {
+                c = line.codePointAt(i);
+                i += Character.charCount(c);
+            } else {
+                c = line.charAt(i);
+                i += 1;
+            }
+            if (c != ' ') {
+                if (size == data.length) {
+                    _block.size = size;
+                    _block.addPart(false);
+                    nextBlock();
+                    data = _block.data;
+                    size = 0;
+                }
+                data[size] = _alphabet.codePointToInt(c);
+                size += 1;
+            }
+        }
+        _block.size = size;
+        _block.addPart(true);
+        markLine();
+    }
+
+    /** Record the current end of the current block as the point to which
+     *  it is cut back if the next line is in error. */
+    private void markLine() {
+        _lineSize = _block.size;
+        _lineSegments = _block.segments;
+    }
+
+    /** Hand the current block to the converter and replace it with a
+     *  free one. */
+    private void nextBlock() throws InterruptedException {
+        _read.put(_block);
+        _block = _free.take();
+        _block.clear();
+        markLine();
+    }
+
+    /** The body of the converting stage: apply the settings and convert
+     *  the messages in the blocks from the reader, handing them on to
+     *  the writer, through the last one.  A block may be reused as soon
+     *  as it is handed on, so nothing is read from it afterwards. */
+    private void convert() throws InterruptedException {
+        boolean last;
+        do {
+            Block block = _read.take();
+            last = block.last;
+            int start = 0;
+            for (int k = 0; k < block.segments; k += 1) {
+                if (block.settings[k] != null) {
+                    Instrumentation.SectionEvent event =
+                        Instrumentation.beginSection(block.lines[k].length());
+                    _machine.setUp(block.settings[k]);
+                    Instrumentation.endSection(event);
+                } else {
+                    int end = block.ends[k];
+                    _machine.convert(block.data, start, block.data, start,
+                                     end - start);
+                    start = end;
+                }
+            }
+            _converted.put(block);
+        } while (!last);
+    }
+
+    /** The body of the writer thread: write the converted messages in
+     *  the blocks from the converter, returning each block to the free
+     *  queue, through the last one. */
+    private void write() {
+        try {
+            boolean last;
+            do {
+                Block block = _converted.take();
+                last = block.last;
+                writeBlock(block);
+                if (block.error != null) {
+                    _inputError = block.error;
+                }
+                _free.put(block);
+            } while (!last);
+        } catch (EnigmaException excp) {
+            _writeError = excp;
+            _converter.interrupt();
+        } catch (InterruptedException excp) {
+            /* The pipeline is being shut down. */
+        }
+    }
+
+    /** Write the message parts in BLOCK. */
+    private void writeBlock(Block block) {
+        int start = 0;
+        for (int k = 0; k < block.segments; k += 1) {
+            if (block.settings[k] == null) {
+                if (!_inLine) {
+                    _output.beginLine();
+                    _inLine = true;
+                }
+                int end = block.ends[k];
+                _output.writePart(_alphabet, block.data, start, end);
+                start = end;
+                if (block.lineEnds[k]) {
+                    _output.endLine();
+                    _inLine = false;
+                }
+            }
+        }
+    }
+
+    /** A unit of work passed between the stages: a sequence of segments,
+     *  each either a settings line to apply or a part of a message line,
+     *  whose indices are stored consecutively in data. */
+    private static class Block {
+
+        /** Make this block empty. */
+        void clear() {
+            size = 0;
+            segments = 0;
+            error = null;
+            last = false;
+        }
+
+        /** Remove all but the first SEGS segments, which hold the first
+         *  N indices. */
+        void truncate(int n, int segs) {
+            size = n;
+            segments = segs;
+        }
+
+        /** Add a segment applying LINE, parsed as SETTINGS. */
+        void addSettings(String line, SettingsLine settings) {
+            lines[segments] = line;
+            this.settings[segments] = settings;
+            ends[segments] = size;
+            segments += 1;
+        }
+
+        /** Add a segment for the indices added since the previous
+         *  segment, which ends its message line iff LINEEND. */
+        void addPart(boolean lineEnd) {
+            lines[segments] = null;
+            settings[segments] = null;
+            ends[segments] = size;
+            lineEnds[segments] = lineEnd;
+            segments += 1;
+        }
+
+        /** Greatest number of segments in a block. */
+        static final int SEGMENTS = 1 << 10;
+
+        /** The indices of message characters. */
+        final int[] data = new int[BLOCK_SIZE];
+
+        /** Number of indices in data. */
+        int size;
+
+        /** Number of segments. */
+        int segments;
+
+        /** The text of each settings segment, or null for a message
+         *  segment. */
+        final String[] lines = new String[SEGMENTS];
+
+        /** The parsed settings of each settings segment, or null for a
+         *  message segment. */
+        final SettingsLine[] settings = new SettingsLine[SEGMENTS];
+
+        /** The index in data just past the end of each segment's
+         *  indices. */
+        final int[] ends = new int[SEGMENTS];
+
+        /** Whether each message segment ends its line. */
+        final boolean[] lineEnds = new boolean[SEGMENTS];
+
+        /** The error ending the input after this block, or null. */
+        EnigmaException error;
+
+        /** True iff this is the last block of the input. */
+        boolean last;
+    }
+
+    /** Number of blocks circulating among the stages. */
+    private static final int BLOCKS = 8;
+
+    /** Number of indices in a block. */
+    private static final int BLOCK_SIZE = 1 << 14;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** The machine's alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Source of input. */
+    private final BufferedReader _input;
+
+    /** Destination of output. */
+    private final MessageWriter _output;
+
+    /** Blocks available to the reader. */
+    private final ArrayBlockingQueue<Block> _free;
+
+    /** Blocks read and awaiting conversion. */
+    private final ArrayBlockingQueue<Block> _read;
+
+    /** Blocks converted and awaiting writing. */
+    private final ArrayBlockingQueue<Block> _converted;
+
+    /** The thread running the converting stage. */
+    private Thread _converter;
+
+    /** The block being filled by the reader. */
+    private Block _block;
+
+    /** Size and number of segments of _block before the line being
+     *  read. */
+    private int _lineSize, _lineSegments;
+
+    /** True iff the writer is within a message line. */
+    private boolean _inLine;
+
+    /** The error in the input, set by the writer when it reaches it. */
+    private volatile EnigmaException _inputError;
+
+    /** The error in writing output, or null. */
+    private volatile EnigmaException _writeError;
+}
@@ -0,0 +1,250 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a message whose rotor order and settings
+ *  are known, by hill-climbing over sets of plug pairs and scoring each
+ *  candidate decryption with an n-gram model.  Each climb starts from a
+ *  random set of pairs and repeatedly tries adding, removing or
+ *  exchanging the pair for every two letters, keeping any change that
+ *  improves the score, until no change helps.  Several climbs, from
+ *  different random starts, run on separate threads.
+ *
+ *  Only the plugboard changes between candidates, so the plugboard-free
+ *  scrambler at every position of the message is tabulated once and
+ *  each candidate costs two plugboard lookups and one table lookup per
+ *  character.
+ *  @author Melody Ma
+ */
+class PlugboardSolver {
+
+    /** A solver for CIPHERTEXT (blanks ignored) as it would be converted
+     *  by MACHINE, whose rotors must be inserted and set to the start of
+     *  the message, scoring decryptions with MODEL.  At most MAXPAIRS
+     *  plug pairs are used. */
+    PlugboardSolver(Machine machine, String ciphertext, NgramModel model,
+                    int maxPairs) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _model = model;
+        _maxPairs = Math.min(maxPairs, _size / 2);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            if (!Character.isWhitespace(ciphertext.charAt(i))) {
+                text.append(ciphertext.charAt(i));
+            }
+        }
+        _cipher = new int[text.length()];
+        _scramblers = new int[_cipher.length * _size];
+        Machine scrambler = machine.copy();
+        int[] table = new int[_size];
+        for (int t = 0; t < _cipher.length; t += 1) {
+            _cipher[t] = _alphabet.toInt(text.charAt(t));
+            scrambler.advanceRotors();
+            scrambler.scramblerTable(table);
+            System.arraycopy(table, 0, _scramblers, t * _size, _size);
+        }
+    }
+
+    /** Return the best of RESTARTS climbs run on EXECUTOR, the I-th
+     *  starting from a random plugboard chosen with seed SEED + I.
+     *  RESTARTS must be positive. */
+    Solution solve(int restarts, long seed, ExecutorService executor) {
+        if (restarts < 1) {
+            throw error("at least one plugboard climb is needed");
+        }
+        List<Future<Solution>> climbs = new ArrayList<>();
+        for (int i = 0; i < restarts; i += 1) {
+            long climbSeed = seed + i;
+            climbs.add(executor.submit(() -> climb(new Random(climbSeed))));
+        }
+        Solution best = null;
+        try {
+            for (Future<Solution> climb : climbs) {
+                Solution solution = climb.get();
+                if (best == null || solution.score() > best.score()) {
+                    best = solution;
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("plugboard search failed: %s", excp);
+        }
+        return best;
+    }
+
+    /** Return the result of one climb from a random plugboard chosen
+     *  with RANDOM.  Runs in the calling thread. */
+    Solution climb(Random random) {
+        int[] plug = new int[_size];
+        int[] plain = new int[_cipher.length];
+        for (int c = 0; c < _size; c += 1) {
+            plug[c] = c;
+        }
+        int pairs = random.nextInt(_maxPairs + 1);
+        for (int k = 0; k < pairs; k += 1) {
+            int a = random.nextInt(_size), b = random.nextInt(_size);
+            if (plug[a] == a && plug[b] == b) {
+                plug[a] = b;
+                plug[b] = a;
+            }
+        }
+        double best = score(plug, plain);
+        int[] saved = new int[_size];
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    System.arraycopy(plug, 0, saved, 0, _size);
+                    if (!change(plug, a, b)) {
+                        continue;
+                    }
+                    double score = score(plug, plain);
+                    if (score > best) {
+                        best = score;
+                        improved = true;
+                    } else {
+                        System.arraycopy(saved, 0, plug, 0, _size);
+                    }
+                }
+            }
+        }
+        score(plug, plain);
+        return new Solution(cycles(plug), best, plainText(plain));
+    }
+
+    /** Modify the plugboard PLUG with respect to letters A and B: unplug
+     *  them if they are plugged together, and otherwise plug them
+     *  together, first unplugging their partners.  Returns false (leaving
+     *  PLUG unchanged) if the change would exceed the allowed number of
+     *  pairs. */
+    private boolean change(int[] plug, int a, int b) {
+        if (plug[a] == b) {
+            plug[a] = a;
+            plug[b] = b;
+            return true;
+        }
+        int pa = plug[a], pb = plug[b];
+        plug[pa] = pa;
+        plug[pb] = pb;
+        if (pa == a && pb == b && pairs(plug) >= _maxPairs) {
+            return false;
+        }
+        plug[a] = b;
+        plug[b] = a;
+        return true;
+    }
+
+    /** Return the number of pairs in PLUG. */
+    private int pairs(int[] plug) {
+        int n = 0;
+        for (int c = 0; c < _size; c += 1) {
+            if (plug[c] > c) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Decrypt my ciphertext into PLAIN with plugboard PLUG and return
+     *  its score. */
+    private double score(int[] plug, int[] plain) {
+        int[] scramblers = _scramblers;
+        for (int t = 0, row = 0; t < plain.length; t += 1, row += _size) {
+            plain[t] = plug[scramblers[row + plug[_cipher[t]]]];
+        }
+        return _model.score(plain, 0, plain.length);
+    }
+
+    /** Return plugboard PLUG in cycle notation. */
+    private String cycles(int[] plug) {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _size; c += 1) {
+            if (plug[c] > c) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(c))
+                    .append(_alphabet.toChar(plug[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the characters whose indices are PLAIN. */
+    private String plainText(int[] plain) {
+        char[] result = new char[plain.length];
+        for (int t = 0; t < plain.length; t += 1) {
+            result[t] = _alphabet.toChar(plain[t]);
+        }
+        return new String(result);
+    }
+
+    /** A plugboard found by the solver. */
+    static class Solution {
+
+        /** A solution with plugboard PLUGBOARD (in cycle notation), whose
+         *  decryption PLAINTEXT scores SCORE. */
+        Solution(String plugboard, double score, String plaintext) {
+            _plugboard = plugboard;
+            _score = score;
+            _plaintext = plaintext;
+        }
+
+        /** Return my plugboard in cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the score of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my decryption. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.3f", _plugboard, _score);
+        }
+
+        /** Plugboard in cycle notation. */
+        private final String _plugboard;
+        /** Score of the decryption. */
+        private final double _score;
+        /** The decryption. */
+        private final String _plaintext;
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Scoring model. */
+    private final NgramModel _model;
+
+    /** Largest number of plug pairs tried. */
+    private final int _maxPairs;
+
+    /** Ciphertext as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Plugboard-free scrambler at each position T of the message, at
+     *  indices T * _size up to (T + 1) * _size. */
+    private final int[] _scramblers;
+}
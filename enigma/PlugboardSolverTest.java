@@ -0,0 +1,134 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.MachineTest.*;
+import static enigma.CoincidenceSearchTest.PLAIN;
+
+/** The suite of all JUnit tests for the PlugboardSolver and NgramModel
+ *  classes.
+ *  @author Melody Ma
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkModel() {
+        Alphabet alpha = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        NgramModel counted =
+            NgramModel.fromCounts(alpha, 2,
+                                  new StringReader("TH 2\nHT 1\nHE 1\n\n"));
+        NgramModel read =
+            NgramModel.fromCorpus(alpha, 2, new StringReader("th, the"));
+        assertEquals(Math.log10(0.5), counted.logProb(19 * 26 + 7), 1e-6);
+        assertEquals(counted.logProb(7 * 26 + 4), read.logProb(7 * 26 + 4),
+                     1e-6);
+        assertTrue(read.logProb(0) < read.logProb(7 * 26 + 4));
+        assertEquals(Math.log10(0.5) + Math.log10(0.25),
+                     read.score(new int[] {0, 19, 7, 4}, 1, 4), 1e-5);
+    }
+
+    @Test
+    public void checkModelLimits() {
+        for (int size : new int[] {50, 100}) {
+            StringBuilder chars = new StringBuilder();
+            for (int c = 0; c < size; c += 1) {
+                chars.append((char) (0x100 + c));
+            }
+            Alphabet alpha = new Alphabet(chars.toString());
+            try {
+                NgramModel.fromCorpus(alpha, 5,
+                                      new StringReader(chars.toString()));
+                fail("built a table of " + size + "^5 entries");
+            } catch (EnigmaException excp) {
+                assertEquals("n-gram table would be too large.",
+                             excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void checkSaveLoad() throws IOException {
+        Alphabet alpha = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        NgramModel model =
+            NgramModel.fromCorpus(alpha, 3, new StringReader(PLAIN));
+        Path file = Files.createTempFile("ngrams", ".bin");
+        try {
+            model.save(file);
+            NgramModel loaded = NgramModel.load(alpha, file);
+            assertEquals(3, loaded.n());
+            for (int k = 0; k < 26 * 26 * 26; k += 1) {
+                assertEquals(model.logProb(k), loaded.logProb(k), 0);
+            }
+            try {
+                NgramModel.load(new Alphabet("ABC"), file);
+                fail("loaded a table for another alphabet");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkSolve() {
+        Alphabet alpha = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        NgramModel model =
+            NgramModel.fromCorpus(alpha, 3, new StringReader(PLAIN));
+        String[] order = {"B", "III", "V"};
+        String plugs = "(AF) (LQ) (MR) (TX)";
+        String cipher = navalMachine(3, 2, order, "QW", plugs)
+            .convert(PLAIN);
+        Machine machine = navalMachine(3, 2, order, "QW", "");
+        PlugboardSolver solver =
+            new PlugboardSolver(machine, cipher, model, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PlugboardSolver.Solution best = solver.solve(8, 1, executor);
+            assertEquals(plugs, best.plugboard());
+            assertEquals(PLAIN, best.plaintext());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkSolveLimits() {
+        Alphabet alpha = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        NgramModel model =
+            NgramModel.fromCorpus(alpha, 3, new StringReader(PLAIN));
+        Machine machine = navalMachine(3, 2, new String[] {"B", "I", "II"},
+                                       "AA", "");
+        PlugboardSolver solver =
+            new PlugboardSolver(machine, machine.convert(PLAIN), model, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            for (int restarts : new int[] {0, -1}) {
+                try {
+                    solver.solve(restarts, 1, executor);
+                    fail("solved with " + restarts + " climbs");
+                } catch (EnigmaException excp) {
+                    assertEquals("at least one plugboard climb is needed",
+                                 excp.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -14,6 +14,16 @@ class Reflector extends FixedRotor {
         set(0);
     }
 
+    /** A reflector with the same name and wiring as ORIGINAL. */
+    Reflector(Reflector original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
+    }
+
     @Override
     boolean reflecting() {
         return true;
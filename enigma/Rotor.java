@@ -7,11 +7,71 @@ import static enigma.EnigmaException.*;
  */
 class Rotor {
 
-    /** A rotor named NAME whose permutation is given by PERM. */
+    /** A rotor named NAME whose permutation is given by PERM.  The rotor
+     *  is a template: it converts by arithmetic on its permutation, and
+     *  the pre-shifted conversion tables of its copies are made the first
+     *  time it is copied. */
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _row = 0;
+    }
+
+    /** A rotor with the same name and wiring as ORIGINAL, sharing its
+     *  pre-shifted conversion tables (made now, if need be), in its 0
+     *  setting. */
+    Rotor(Rotor original) {
+        _name = original._name;
+        _permutation = original._permutation;
+        original.shift();
+        _shifted = true;
+        _forwardBytes = original._forwardBytes;
+        _backwardBytes = original._backwardBytes;
+        _forwardChars = original._forwardChars;
+        _backwardChars = original._backwardChars;
+        _setting = 0;
+        _row = 0;
+    }
+
+    /** Make my pre-shifted conversion tables, if that has not been done:
+     *  tables of bytes if my alphabet has at most 256 characters, tables
+     *  of chars if it is larger but the tables would have at most
+     *  MAX_SHIFTED_ENTRIES entries, and otherwise none. */
+    private synchronized void shift() {
+        if (_shifted) {
+            return;
+        }
+        _shifted = true;
+        int size = size();
+        if (size <= BYTE_TABLE_SIZE) {
+            _forwardBytes = new byte[size * size];
+            _backwardBytes = new byte[size * size];
+        } else if ((long) size * size <= MAX_SHIFTED_ENTRIES) {
+            _forwardChars = new char[size * size];
+            _backwardChars = new char[size * size];
+        } else {
+            return;
+        }
+        for (int posn = 0, k = 0; posn < size; posn += 1) {
+            for (int p = 0; p < size; p += 1, k += 1) {
+                int f = convertForward(posn, p), b = convertBackward(posn, p);
+                if (_forwardBytes != null) {
+                    _forwardBytes[k] = (byte) f;
+                    _backwardBytes[k] = (byte) b;
+                } else {
+                    _forwardChars[k] = (char) f;
+                    _backwardChars[k] = (char) b;
+                }
+            }
+        }
+    }
+
+    /** Return a new rotor of my kind with my name and wiring, in its 0
+     *  setting.  The copy shares my pre-shifted conversion tables but has
+     *  a setting of its own. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Return my name. */
@@ -52,35 +112,70 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = _permutation.wrap(posn);
+        _row = _setting * size();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        int index = alphabet().toInt(cposn);
-        _setting = index;
+        set(alphabet().toInt(cposn));
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int enter = _permutation.wrap(p + _setting);
-        int per = _permutation.permute(enter);
-        int exit = _permutation.wrap(per - _setting);
-        return exit;
+        byte[] bytes = _forwardBytes;
+        if (bytes != null) {
+            return bytes[_row + p] & BYTE_MASK;
+        }
+        char[] chars = _forwardChars;
+        if (chars != null) {
+            return chars[_row + p];
+        }
+        return convertForward(_setting, p);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int enter = _permutation.wrap(e + _setting);
-        int inv = _permutation.invert(enter);
-        int exit = _permutation.wrap(inv - _setting);
-        return exit;
+        byte[] bytes = _backwardBytes;
+        if (bytes != null) {
+            return bytes[_row + e] & BYTE_MASK;
+        }
+        char[] chars = _backwardChars;
+        if (chars != null) {
+            return chars[_row + e];
+        }
+        return convertBackward(_setting, e);
+    }
+
+    /** Return the conversion of P according to my permutation when I am
+     *  at setting POSN, both in the range 0..size()-1. */
+    int convertForward(int posn, int p) {
+        int size = size();
+        int enter = p + posn < size ? p + posn : p + posn - size;
+        int exit = _permutation.permute(enter) - posn;
+        return exit < 0 ? exit + size : exit;
+    }
+
+    /** Return the conversion of E according to the inverse of my
+     *  permutation when I am at setting POSN, both in the range
+     *  0..size()-1. */
+    int convertBackward(int posn, int e) {
+        int size = size();
+        int enter = e + posn < size ? e + posn : e + posn - size;
+        int exit = _permutation.invert(enter) - posn;
+        return exit < 0 ? exit + size : exit;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return notchAt(_setting);
+    }
+
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  when at setting POSN (in the range 0..size()-1). */
+    boolean notchAt(int posn) {
         return false;
     }
 
@@ -102,4 +197,38 @@ class Rotor {
     /** Current setting. */
     private int _setting;
 
+    /** Offset of the row for the current setting in my pre-shifted
+     *  tables, i.e. _setting * size(). */
+    private int _row;
+
+    /** True iff my pre-shifted tables have been made (or found to be
+     *  too large to make). */
+    private boolean _shifted;
+
+    /** When non-null, the conversion of each input P at each setting S,
+     *  according to my permutation, stored at index S * size() + P. */
+    private byte[] _forwardBytes;
+
+    /** When non-null, the conversion of each input E at each setting S,
+     *  according to the inverse of my permutation, arranged as
+     *  _forwardBytes. */
+    private byte[] _backwardBytes;
+
+    /** As _forwardBytes, for alphabets too large for bytes. */
+    private char[] _forwardChars;
+
+    /** As _backwardBytes, for alphabets too large for bytes. */
+    private char[] _backwardChars;
+
+    /** Largest alphabet size whose conversions fit in a byte. */
+    private static final int BYTE_TABLE_SIZE = 256;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Largest number of entries (the square of the alphabet size) in
+     *  each pre-shifted table.  Rotors with larger alphabets, which would
+     *  need tables of over 8MB each, convert by arithmetic instead. */
+    static final int MAX_SHIFTED_ENTRIES = 1 << 22;
+
 }
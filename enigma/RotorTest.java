@@ -1,4 +1,81 @@
 package enigma;
 
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Rotor class.
+ *  @author Melody Ma
+ */
 public class RotorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkEverySetting() {
+        Permutation perm = new Permutation(NAVALA.get("Beta"), UPPER);
+        Rotor template = new FixedRotor("Beta", perm);
+        for (Rotor rotor : new Rotor[] { template, template.copy() }) {
+            for (int posn = 0; posn < UPPER.size(); posn += 1) {
+                rotor.set(posn);
+                for (int p = 0; p < UPPER.size(); p += 1) {
+                    int expected = perm.wrap(perm.permute(p + posn) - posn);
+                    assertEquals(msg("Beta", "forward %d at %d", p, posn),
+                                 expected, rotor.convertForward(p));
+                    assertEquals(msg("Beta", "backward %d at %d",
+                                     expected, posn),
+                                 p, rotor.convertBackward(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkReflector() {
+        Permutation perm = new Permutation(NAVALA.get("B"), UPPER);
+        Rotor rotor = new Reflector("B", perm);
+        for (int p = 0; p < UPPER.size(); p += 1) {
+            assertEquals(perm.permute(p), rotor.convertForward(p));
+        }
+    }
+
+    @Test
+    public void checkLargeAlphabets() {
+        for (int size : new int[] { 300, 2500 }) {
+            StringBuilder chars = new StringBuilder();
+            StringBuilder cycle = new StringBuilder();
+            for (int c = 0; c < size; c += 1) {
+                chars.appendCodePoint(0x10000 + c);
+                cycle.appendCodePoint(0x10000 + (c * 7) % size);
+            }
+            Alphabet alpha = new Alphabet(chars.toString());
+            Permutation perm = new Permutation("(" + cycle + ")", alpha);
+            Rotor template = new FixedRotor("R", perm);
+            Rotor copy = template.copy();
+            for (int posn = 0; posn < size; posn += 37) {
+                template.set(posn);
+                copy.set(posn);
+                for (int p = 0; p < size; p += 1) {
+                    int expected = perm.wrap(perm.permute(p + posn) - posn);
+                    assertEquals(msg("R", "forward %d at %d", p, posn),
+                                 expected, copy.convertForward(p));
+                    assertEquals(expected, template.convertForward(p));
+                    assertEquals(p, copy.convertBackward(expected));
+                }
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkReflectorSet() {
+        Rotor rotor = new Reflector("B",
+                                    new Permutation(NAVALA.get("B"), UPPER));
+        rotor.set('B');
+    }
+
 }
@@ -0,0 +1,417 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A CoincidenceSearch divided among worker processes on this machine,
+ *  so that the largest searches are not confined to the heap and
+ *  garbage collector of a single JVM.  The coordinator starts each
+ *  worker as a JVM like its own (same Java, class path and JVM options)
+ *  running Main --search-worker, which reads the same configuration and
+ *  connects back over a loopback TCP socket.  The coordinator hands out
+ *  the work units of the search (see CoincidenceSearch.numUnits) a few
+ *  at a time to each worker, and merges the best results the workers
+ *  return for each unit.
+ *
+ *  A worker whose process exits or whose connection fails before the
+ *  search is over has its outstanding units handed to other workers,
+ *  and is replaced by a new worker, up to one replacement per worker
+ *  originally requested.  The search fails only when no worker is left.
+ *
+ *  The protocol is line-based.  A worker first sends "WORKER PID".  The
+ *  coordinator sends "SEARCH TOPK I1 I2 ...", giving the number of
+ *  results to keep and the ciphertext as alphabet indices, and then any
+ *  number of "UNIT U" lines.  The worker answers each unit, in order,
+ *  with a "RESULT SCORE SETTING ROTOR..." line for each of its best
+ *  results followed by "DONE U".  The coordinator closes the connection
+ *  when the search is over.
+ *  @author Melody Ma
+ */
+class SearchCoordinator {
+
+    /** A coordinator searching the keys of the machines described by
+     *  CONFIG, read from the file CONFIGPATH, with WORKERS worker
+     *  processes and keeping the best TOPK results.  WORKERS and TOPK
+     *  must be positive. */
+    SearchCoordinator(Configuration config, String configPath,
+                      int workers, int topK) {
+        if (workers < 1) {
+            throw error("at least one search worker is needed");
+        }
+        if (topK < 1) {
+            throw error("at least one search result must be kept");
+        }
+        _config = config;
+        _configPath = configPath;
+        _numWorkers = workers;
+        _topK = topK;
+    }
+
+    /** Return the best results for CIPHERTEXT, best first, as for
+     *  CoincidenceSearch.search.  Blanks in CIPHERTEXT are ignored. */
+    List<CoincidenceSearch.Result> search(String ciphertext) {
+        CoincidenceSearch local =
+            new CoincidenceSearch(_config.newMachine(), _topK, null);
+        StringBuilder request = new StringBuilder("SEARCH ").append(_topK);
+        for (int c : local.indices(ciphertext)) {
+            request.append(' ').append(c);
+        }
+        _request = request.toString();
+        _numUnits = local.numUnits();
+        _results = new CoincidenceSearch.TopResults(_topK);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                              0));
+            _port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            Thread acceptor = new Thread(() -> accept(server),
+                                         "enigma-search-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            synchronized (this) {
+                for (int i = 0; i < _numWorkers; i += 1) {
+                    startWorker();
+                }
+                while (_done < _numUnits && _failure == null) {
+                    wait();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("search coordinator failed: %s", excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("search interrupted");
+        } finally {
+            synchronized (this) {
+                _over = true;
+                notifyAll();
+                for (Worker worker : _workers) {
+                    worker.process.destroy();
+                }
+            }
+        }
+        if (_failure != null) {
+            throw _failure;
+        }
+        return _results.sorted();
+    }
+
+    /** Start a new worker process.  Sets _failure if it cannot be
+     *  started. */
+    private synchronized void startWorker() {
+        Process process;
+        try {
+            process = new ProcessBuilder(workerCommand())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        } catch (IOException excp) {
+            _failure = error("could not start search worker: %s",
+                             excp.getMessage());
+            notifyAll();
+            return;
+        }
+        Worker worker = new Worker(process);
+        _workers.add(worker);
+        process.onExit().thenRun(() -> failed(worker));
+    }
+
+    /** Return the command that runs a new worker process: a JVM like
+     *  this one running Main --search-worker PORT CONFIGPATH. */
+    List<String> workerCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean()
+                       .getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("--search-worker");
+        command.add(Integer.toString(_port));
+        command.add(_configPath);
+        return command;
+    }
+
+    /** Accept connections from workers on SERVER, handling each on a
+     *  thread of its own, until SERVER is closed. */
+    private void accept(ServerSocketChannel server) {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                Thread link = new Thread(() -> serve(channel),
+                                         "enigma-search-link");
+                link.setDaemon(true);
+                link.start();
+            }
+        } catch (IOException excp) {
+            /* The search is over. */
+            return;
+        }
+    }
+
+    /** Hand out units to the worker connected by CHANNEL and gather its
+     *  results until the search is over or the worker fails. */
+    private void serve(SocketChannel channel) {
+        Worker worker = null;
+        try (channel) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            PrintWriter out =
+                new PrintWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            worker = identify(in.readLine());
+            if (worker == null) {
+                return;
+            }
+            out.println(_request);
+            CoincidenceSearch.TopResults unit =
+                new CoincidenceSearch.TopResults(_topK);
+            while (true) {
+                if (!assign(worker, out)) {
+                    return;
+                }
+                out.flush();
+                String line = in.readLine();
+                if (line == null) {
+                    break;
+                } else if (line.startsWith("RESULT ")) {
+                    unit.add(parseResult(line));
+                } else if (line.startsWith("DONE ")) {
+                    finish(worker, Long.parseLong(line.substring(5)), unit);
+                    unit = new CoincidenceSearch.TopResults(_topK);
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException excp) {
+            /* Treated as the failure of the worker. */
+        }
+        if (worker != null) {
+            failed(worker);
+        }
+    }
+
+    /** Return the live worker that has announced itself with LINE, or
+     *  null if there is none. */
+    private synchronized Worker identify(String line) {
+        if (line == null || !line.startsWith("WORKER ")) {
+            return null;
+        }
+        long pid = Long.parseLong(line.substring(7));
+        for (Worker worker : _workers) {
+            if (worker.process.pid() == pid && !worker.failed) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    /** Send units to WORKER on OUT until it has UNITS_PER_WORKER of
+     *  them outstanding or none are left to assign.  If it has none
+     *  outstanding, waits for a unit to become available (as when
+     *  another worker fails).  Returns false iff the search is over or
+     *  WORKER has failed. */
+    private synchronized boolean assign(Worker worker, PrintWriter out)
+        throws InterruptedException {
+        while (true) {
+            if (_over || _failure != null || worker.failed
+                || _done == _numUnits) {
+                return false;
+            }
+            while (worker.outstanding.size() < UNITS_PER_WORKER) {
+                long unit;
+                if (!_retry.isEmpty()) {
+                    unit = _retry.poll();
+                } else if (_next < _numUnits) {
+                    unit = _next;
+                    _next += 1;
+                } else {
+                    break;
+                }
+                worker.outstanding.add(unit);
+                out.println("UNIT " + unit);
+            }
+            if (!worker.outstanding.isEmpty()) {
+                return true;
+            }
+            wait();
+        }
+    }
+
+    /** Record that WORKER has finished UNIT, whose best results are
+     *  RESULTS. */
+    private synchronized void finish(Worker worker, long unit,
+                                     CoincidenceSearch.TopResults results) {
+        if (worker.failed || !worker.outstanding.remove(unit)) {
+            return;
+        }
+        _results.merge(results);
+        _done += 1;
+        if (_done == _numUnits) {
+            notifyAll();
+        }
+    }
+
+    /** Record that WORKER's process or connection has failed: its
+     *  outstanding units are handed on, its process is stopped, and it
+     *  is replaced if more workers may be started. */
+    private synchronized void failed(Worker worker) {
+        if (worker.failed) {
+            return;
+        }
+        worker.failed = true;
+        worker.process.destroy();
+        _retry.addAll(worker.outstanding);
+        worker.outstanding.clear();
+        if (_over || _done == _numUnits) {
+            return;
+        }
+        if (_restarts < _numWorkers) {
+            _restarts += 1;
+            startWorker();
+        } else if (_workers.stream().allMatch(w -> w.failed)) {
+            _failure = error("all search workers failed");
+        }
+        notifyAll();
+    }
+
+    /** Run a search worker for the machines described by CONFIG,
+     *  connecting to the coordinator at PORT on the loopback interface
+     *  and searching the units it assigns until it closes the
+     *  connection. */
+    static void work(Configuration config, int port) {
+        InetSocketAddress address =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            PrintWriter out =
+                new PrintWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            out.println("WORKER " + ProcessHandle.current().pid());
+            out.flush();
+            String request = in.readLine();
+            if (request == null || !request.startsWith("SEARCH ")) {
+                return;
+            }
+            String[] fields = request.split(" ");
+            int topK = Integer.parseInt(fields[1]);
+            int[] text = new int[fields.length - 2];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = Integer.parseInt(fields[i + 2]);
+            }
+            CoincidenceSearch search =
+                new CoincidenceSearch(config.newMachine(), topK, null);
+            for (String line = in.readLine();
+                 line != null && line.startsWith("UNIT ");
+                 line = in.readLine()) {
+                long unit = Long.parseLong(line.substring(5));
+                for (CoincidenceSearch.Result result
+                         : search.searchUnit(text, unit).sorted()) {
+                    out.println("RESULT " + result.score() + " "
+                                + result.setting() + " "
+                                + String.join(" ", result.order()));
+                }
+                out.println("DONE " + unit);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            throw error("search worker failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the result described by a "RESULT" LINE from a worker. */
+    private static CoincidenceSearch.Result parseResult(String line) {
+        String[] fields = line.split(" ");
+        String[] order = new String[fields.length - 3];
+        System.arraycopy(fields, 3, order, 0, order.length);
+        return new CoincidenceSearch.Result(order, fields[2],
+                                            Double.parseDouble(fields[1]));
+    }
+
+    /** A worker process and the units assigned to it. */
+    private static class Worker {
+
+        /** A worker running as PROCESS. */
+        Worker(Process process) {
+            this.process = process;
+        }
+
+        /** The worker's process. */
+        final Process process;
+
+        /** Units sent to the worker and not yet finished, in the order
+         *  sent. */
+        final ArrayDeque<Long> outstanding = new ArrayDeque<>();
+
+        /** True iff the worker has failed or been stopped. */
+        boolean failed;
+    }
+
+    /** Greatest number of units assigned to a worker at once, so that a
+     *  worker has its next unit at hand when it finishes one. */
+    private static final int UNITS_PER_WORKER = 2;
+
+    /** Shared description of the machines searched. */
+    private final Configuration _config;
+
+    /** File from which workers read the configuration. */
+    private final String _configPath;
+
+    /** Number of workers to run. */
+    private final int _numWorkers;
+
+    /** Number of results kept. */
+    private final int _topK;
+
+    /** The SEARCH line sent to each worker. */
+    private String _request;
+
+    /** Number of units in the search. */
+    private long _numUnits;
+
+    /** Port at which workers connect. */
+    private int _port;
+
+    /** The best results of the finished units. */
+    private CoincidenceSearch.TopResults _results;
+
+    /** All workers started. */
+    private final List<Worker> _workers = new ArrayList<>();
+
+    /** Units taken back from failed workers, to be assigned again. */
+    private final ArrayDeque<Long> _retry = new ArrayDeque<>();
+
+    /** First unit not yet assigned to any worker. */
+    private long _next;
+
+    /** Number of units finished. */
+    private long _done;
+
+    /** Number of workers started to replace failed ones. */
+    private int _restarts;
+
+    /** True iff the search has ended. */
+    private boolean _over;
+
+    /** The error ending the search, or null. */
+    private EnigmaException _failure;
+}
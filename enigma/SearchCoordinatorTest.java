@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.*;
+import static enigma.CoincidenceSearchTest.PLAIN;
+
+/** The suite of all JUnit tests for the SearchCoordinator class.  The
+ *  tests start worker JVMs with the class path of the JVM running them.
+ *  @author Melody Ma
+ */
+public class SearchCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** A search worker that takes its first assignment from the
+     *  coordinator and then exits without doing any of it. */
+    public static class QuittingWorker {
+
+        /** Connect to the coordinator at port ARGS[0] and quit after
+         *  receiving a unit. */
+        public static void main(String... args) throws IOException {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                       Integer.parseInt(args[0]));
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                    socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            out.println("WORKER " + ProcessHandle.current().pid());
+            for (String line = in.readLine();
+                 line != null && !line.startsWith("UNIT ");
+                 line = in.readLine()) {
+                /* Wait for a unit. */
+            }
+            System.exit(1);
+        }
+    }
+
+    /** A coordinator whose first QUITTERS workers are QuittingWorkers. */
+    private static class Coordinator extends SearchCoordinator {
+
+        /** A coordinator for CONFIG, read from CONFIGPATH, with WORKERS
+         *  workers, the first QUITTERS of which quit early, keeping the
+         *  best TOPK results. */
+        Coordinator(Configuration config, Path configPath, int workers,
+                    int quitters, int topK) {
+            super(config, configPath.toString(), workers, topK);
+            _quitters = quitters;
+        }
+
+        @Override
+        List<String> workerCommand() {
+            List<String> command = super.workerCommand();
+            if (_quitters > 0) {
+                _quitters -= 1;
+                int main = command.indexOf(Main.class.getName());
+                command.set(main, QuittingWorker.class.getName());
+                command.remove(main + 1);
+            }
+            return command;
+        }
+
+        /** Number of workers yet to be started as QuittingWorkers. */
+        private int _quitters;
+    }
+
+    @Test
+    public void checkReassignment() throws IOException {
+        String[] order = {"C", "VII", "II"};
+        Machine machine = navalMachine(3, 2, order, "KD", "");
+        String cipher = machine.convert(PLAIN);
+        Path config = Files.createTempFile("enigma", ".bin");
+        try {
+            machine.configuration().save(config);
+            List<CoincidenceSearch.Result> best =
+                new Coordinator(machine.configuration(), config, 2, 2, 5)
+                .search(cipher);
+            List<CoincidenceSearch.Result> expected =
+                new CoincidenceSearch(machine, 5, new ForkJoinPool(1))
+                .search(cipher);
+            assertEquals(expected.size(), best.size());
+            assertEquals("* C VII II KD", best.get(0).settingsLine());
+            for (int k = 0; k < best.size(); k += 1) {
+                assertEquals(expected.get(k).score(), best.get(k).score(),
+                             0.0);
+            }
+        } finally {
+            Files.delete(config);
+        }
+    }
+
+    @Test
+    public void checkAllWorkersFail() throws IOException {
+        Machine machine = navalMachine(3, 2, new String[] {"B", "I", "II"},
+                                       "AA", "");
+        Path config = Files.createTempFile("enigma", ".bin");
+        try {
+            machine.configuration().save(config);
+            new Coordinator(machine.configuration(), config, 1, 2, 5)
+                .search(machine.convert(PLAIN));
+            fail("search succeeded without workers");
+        } catch (EnigmaException excp) {
+            assertEquals("all search workers failed", excp.getMessage());
+        } finally {
+            Files.delete(config);
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server converting messages for local clients with one
+ *  shared configuration, so that a client pays for neither starting a
+ *  JVM nor parsing a configuration.  The server listens on a loopback TCP
+ *  port or on a Unix-domain socket, and handles each connection on a
+ *  thread of its own: a virtual thread where the runtime provides them,
+ *  and otherwise a pooled platform thread.  A socket left at the path
+ *  by an earlier server that has ended is replaced, but the server
+ *  refuses to bind over a socket that is still accepting connections
+ *  or over any other file, and removes its socket when it stops.
+ *
+ *  A client sends lines in the same form as the input to Main: settings
+ *  lines, each followed by message lines.  The server answers each
+ *  message line with its conversion in groups of five, and answers a
+ *  line that cannot be handled with a line beginning "Error: ", after
+ *  which the next message must be preceded by a settings line.  Each
+ *  connection has its own machine, built from the shared configuration,
+ *  so it holds only rotor settings and a plugboard.  The number of
+ *  message lines converted and their conversion latencies are reported
+ *  on the standard error periodically.
+ *  @author Melody Ma
+ */
+class Server {
+
+    /** A server for machines described by CONFIG, listening at ADDRESS:
+     *  a port number for a TCP port on the loopback interface, or
+     *  otherwise the path of a Unix-domain socket. */
+    Server(Configuration config, String address) {
+        _config = config;
+        _address = address;
+    }
+
+    /** Serve connections until the process is stopped. */
+    void serve() {
+        ScheduledExecutorService reporter =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "enigma-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+        reporter.scheduleAtFixedRate(this::report, REPORT_INTERVAL,
+                                     REPORT_INTERVAL, TimeUnit.SECONDS);
+        ExecutorService handlers = connectionExecutor();
+        try (ServerSocketChannel server = open()) {
+            while (true) {
+                SocketChannel client = server.accept();
+                handlers.execute(() -> handle(client));
+            }
+        } catch (IOException excp) {
+            if (!_stopped) {
+                throw error("server failed: %s", excp.getMessage());
+            }
+        } finally {
+            handlers.shutdown();
+            reporter.shutdown();
+            removeSocket();
+        }
+    }
+
+    /** Stop accepting connections, causing serve to return. */
+    void stop() {
+        _stopped = true;
+        ServerSocketChannel server = _server;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException excp) {
+                /* Closed as far as it can be. */
+                return;
+            }
+        }
+    }
+
+    /** Return a channel listening at my address. */
+    private ServerSocketChannel open() throws IOException {
+        SocketAddress address;
+        ServerSocketChannel server;
+        if (_address.matches("\\d+")) {
+            int port = Integer.parseInt(_address);
+            if (port > MAX_PORT) {
+                throw error("bad port number %s", _address);
+            }
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                            port);
+            server = ServerSocketChannel.open();
+        } else {
+            Path path;
+            try {
+                path = Paths.get(_address);
+            } catch (InvalidPathException excp) {
+                throw error("bad socket path %s", _address);
+            }
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (!isSocket(path)) {
+                    throw error("%s exists and is not a socket", _address);
+                } else if (isListening(path)) {
+                    throw error("address in use: %s", _address);
+                }
+                Files.delete(path);
+            }
+            address = UnixDomainSocketAddress.of(path);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        }
+        try {
+            server.bind(address);
+        } catch (IOException excp) {
+            server.close();
+            throw excp;
+        }
+        if (address instanceof UnixDomainSocketAddress) {
+            _socketPath = ((UnixDomainSocketAddress) address).getPath();
+            _cleanup = new Thread(this::removeSocket, "enigma-cleanup");
+            Runtime.getRuntime().addShutdownHook(_cleanup);
+        }
+        _server = server;
+        if (_stopped) {
+            server.close();
+        }
+        return server;
+    }
+
+    /** Return true iff PATH names a socket (and not a link to one).
+     *  Where file modes are not available, no file is taken to be a
+     *  socket, so that none is ever removed. */
+    private static boolean isSocket(Path path) {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode",
+                                                    LinkOption.NOFOLLOW_LINKS);
+            return (mode & FILE_TYPE_MASK) == SOCKET_TYPE;
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Return true iff a server accepts connections at the Unix-domain
+     *  socket PATH, as opposed to its being left behind by a server that
+     *  has ended. */
+    private static boolean isListening(Path path) {
+        try (SocketChannel channel =
+                 SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(path));
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Remove the Unix-domain socket I created, if it is still there
+     *  and still a socket. */
+    private synchronized void removeSocket() {
+        Path path = _socketPath;
+        if (path == null) {
+            return;
+        }
+        _socketPath = null;
+        try {
+            if (isSocket(path)) {
+                Files.delete(path);
+            }
+            if (_cleanup != null && _cleanup != Thread.currentThread()) {
+                Runtime.getRuntime().removeShutdownHook(_cleanup);
+            }
+        } catch (IOException | IllegalStateException excp) {
+            /* Nothing more can be done: the process is ending. */
+            return;
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread if
+     *  this runtime supports them, and otherwise on pooled threads. */
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Converse with CLIENT until it closes its connection. */
+    private void handle(SocketChannel client) {
+        try (client) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(client)));
+            MessageWriter out =
+                new MessageWriter(Channels.newOutputStream(client));
+            Machine machine = _config.newMachine();
+            boolean ready = false;
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                try {
+                    if (line.contains("*")) {
+                        ready = false;
+                        Main.setUp(machine, line);
+                        ready = true;
+                    } else if (!ready) {
+                        throw error("No settings line.");
+                    } else {
+                        long start = System.nanoTime();
+                        out.convertLine(machine, line);
+                        record(System.nanoTime() - start);
+                    }
+                } catch (EnigmaException excp) {
+                    ready = false;
+                    out.write("Error: " + excp.getMessage()
+                              + System.lineSeparator());
+                }
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException | EnigmaException excp) {
+            /* The client has gone away; nothing more can be done. */
+            return;
+        }
+    }
+
+    /** Record the conversion of one message line, taking NANOS
+     *  nanoseconds. */
+    private void record(long nanos) {
+        _requests.increment();
+        _totalNanos.add(nanos);
+        _maxNanos.accumulate(nanos);
+    }
+
+    /** Print and reset the statistics gathered since the last report, if
+     *  any message was converted. */
+    private void report() {
+        long requests = _requests.sumThenReset();
+        long total = _totalNanos.sumThenReset();
+        long max = _maxNanos.getThenReset();
+        if (requests > 0) {
+            System.err.printf("enigma server: %d messages, %.1f/s, "
+                              + "mean %.1f us, max %.1f us%n",
+                              requests, (double) requests / REPORT_INTERVAL,
+                              total / 1e3 / requests, max / 1e3);
+        }
+    }
+
+    /** Seconds between reports of statistics. */
+    private static final int REPORT_INTERVAL = 10;
+
+    /** Largest TCP port number. */
+    private static final int MAX_PORT = 65535;
+
+    /** Mask of the file-type bits of a Unix file mode. */
+    private static final int FILE_TYPE_MASK = 0170000;
+
+    /** File-type bits of a socket. */
+    private static final int SOCKET_TYPE = 0140000;
+
+    /** Shared description of the machines used. */
+    private final Configuration _config;
+
+    /** Port number or socket path to listen at. */
+    private final String _address;
+
+    /** The channel accepting connections, once it is open. */
+    private volatile ServerSocketChannel _server;
+
+    /** True iff stop has been called. */
+    private volatile boolean _stopped;
+
+    /** The Unix-domain socket I created and have yet to remove, or
+     *  null. */
+    private Path _socketPath;
+
+    /** Shutdown hook removing _socketPath, or null. */
+    private Thread _cleanup;
+
+    /** Number of message lines converted since the last report. */
+    private final LongAdder _requests = new LongAdder();
+
+    /** Total conversion time since the last report, in nanoseconds. */
+    private final LongAdder _totalNanos = new LongAdder();
+
+    /** Longest conversion time since the last report, in nanoseconds. */
+    private final LongAccumulator _maxNanos =
+        new LongAccumulator(Math::max, 0);
+}
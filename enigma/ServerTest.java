@@ -0,0 +1,139 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Melody Ma
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a new empty directory for sockets. */
+    private static Path socketDirectory() throws IOException {
+        return Files.createTempDirectory("enigma-server");
+    }
+
+    /** Return a channel connected to the server listening at SOCKET,
+     *  waiting for it to begin listening. */
+    private static SocketChannel connect(Path socket) throws Exception {
+        while (true) {
+            SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void checkReplies() throws Exception {
+        Path dir = socketDirectory();
+        Path socket = dir.resolve("enigma.sock");
+        Server server = new Server(standardMachine().configuration(),
+                                   socket.toString());
+        Thread serving = new Thread(server::serve);
+        serving.setDaemon(true);
+        serving.start();
+        try (SocketChannel channel = connect(socket)) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel)));
+            PrintWriter out =
+                new PrintWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel)), true);
+            out.println("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+            out.println("FROM HIS SHOULDER HIAWATHA");
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", in.readLine());
+            out.println("* B Beta III IV IV AXLE");
+            assertEquals("Error: Rotors have been repeated.", in.readLine());
+            out.println("FROM HIS SHOULDER HIAWATHA");
+            assertEquals("Error: No settings line.", in.readLine());
+        }
+        server.stop();
+        serving.join();
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void checkAddressInUse() throws Exception {
+        Path dir = socketDirectory();
+        Path socket = dir.resolve("enigma.sock");
+        Configuration config = standardMachine().configuration();
+        ServerSocketChannel stale =
+            ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        stale.bind(UnixDomainSocketAddress.of(socket));
+        stale.close();
+        assertTrue(Files.exists(socket));
+        Server server = new Server(config, socket.toString());
+        Thread serving = new Thread(server::serve);
+        serving.setDaemon(true);
+        serving.start();
+        connect(socket).close();
+        try {
+            new Server(config, socket.toString()).serve();
+            fail("took over the address of a live server");
+        } catch (EnigmaException excp) {
+            assertEquals("address in use: " + socket, excp.getMessage());
+        }
+        try (SocketChannel channel = connect(socket)) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel)));
+            PrintWriter out =
+                new PrintWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel)), true);
+            out.println("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+            out.println("FROM HIS SHOULDER HIAWATHA");
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", in.readLine());
+        }
+        server.stop();
+        serving.join();
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void checkKeepsOtherFiles() throws Exception {
+        Path dir = socketDirectory();
+        Path file = dir.resolve("notes.txt");
+        Files.writeString(file, "keep me");
+        Server server = new Server(standardMachine().configuration(),
+                                   file.toString());
+        try {
+            server.serve();
+            fail("bound over a regular file");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals("keep me", Files.readString(file));
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A parsed settings line, such as "* B Beta III IV I AXLE (HQ) (EX)":
+ *  the names of the rotors to insert, starting with the reflector, the
+ *  settings of all but the reflector, and the plugboard.  Settings lines
+ *  are immutable, and are cached by Configuration.settingsLine, so that
+ *  a line that recurs throughout an input is parsed and checked only
+ *  once.
+ *  @author Melody Ma
+ */
+final class SettingsLine {
+
+    /** The settings given by LINE for the machines of CONFIG, which must
+     *  have the format specified in the assignment.  The checks made,
+     *  and their order, are those of inserting the rotors, setting them
+     *  and setting the plugboard. */
+    SettingsLine(Configuration config, String line) {
+        String[] input = line.split(" ");
+        if (!input[0].equals("*")) {
+            throw error("Input format is off.");
+        }
+        int n = config.numRotors();
+        if (input.length < n + 2) {
+            throw error("Input format is off.");
+        }
+        _rotors = Arrays.copyOfRange(input, 1, n + 1);
+        for (int i = 0; i < _rotors.length; i++) {
+            for (int j = 0; j < _rotors.length; j++) {
+                if (_rotors[i].equals(_rotors[j]) && i != j) {
+                    throw error("Rotors have been repeated.");
+                }
+            }
+        }
+        for (String name : _rotors) {
+            if (!config.rotors().containsKey(name)) {
+                throw error("No such Rotor.");
+            }
+        }
+        if (!config.rotors().get(_rotors[0]).reflecting()) {
+            throw error("First rotor is not a reflector.");
+        }
+        int[] points = input[n + 1].codePoints().toArray();
+        if (points.length != n - 1) {
+            throw error("Input has the wrong length.");
+        }
+        _settings = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            _settings[i] = config.alphabet().codePointToInt(points[i]);
+        }
+        StringBuilder plugs = new StringBuilder();
+        for (int i = n + 2; i < input.length; i++) {
+            plugs.append(input[i]).append(' ');
+        }
+        _plugboard = new Permutation(plugs.toString(), config.alphabet());
+    }
+
+    /** Return the names of the rotors, starting with the reflector.  The
+     *  array is shared, and must not be modified. */
+    String[] rotors() {
+        return _rotors;
+    }
+
+    /** Return the indices of the settings of the rotors in slots 1 on,
+     *  as for Machine.setRotors(int[]).  The array is shared, and must
+     *  not be modified. */
+    int[] settings() {
+        return _settings;
+    }
+
+    /** Return the plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Names of the rotors. */
+    private final String[] _rotors;
+
+    /** Indices of the rotor settings. */
+    private final int[] _settings;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+}
@@ -11,7 +11,15 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(AlphabetTest.class, PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      RotorTest.class, MachineTest.class,
+                                      CoincidenceSearchTest.class,
+                                      BombeTest.class,
+                                      PlugboardSolverTest.class,
+                                      ServerTest.class, MainTest.class,
+                                      InstrumentationTest.class,
+                                      SearchCoordinatorTest.class,
+                                      MessageWriterTest.class));
     }
 }
 
@@ -0,0 +1,117 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A MachineBatch that performs each step for as many lanes at once as
+ *  fit in the platform's preferred vector, using the (incubating)
+ *  Vector API.  Each table lookup adds a vector of table offsets to a
+ *  vector of character indices and gathers the table entries at the
+ *  sums.  Stepping is done with masks: the rule of Machine.advanceRotors
+ *  (a pawl that moves a rotor and its left neighbor skips the
+ *  neighbor's own pawl) means that the pawl of slot I acts iff it is
+ *  engaged and the pawl of slot I-1 did not act, and a rotor moves iff
+ *  its own pawl or that of the slot to its right acts.
+ *
+ *  This class is kept apart from the rest of the package, so that
+ *  neither compiling nor running the package needs the incubating
+ *  module: it is compiled only by the Makefile in its own directory,
+ *  and MachineBatch.of loads it by name when it is present and the
+ *  jdk.incubator.vector module has been added to the runtime.
+ *  @author Melody Ma
+ */
+class VectorMachineBatch extends MachineBatch {
+
+    /** A vectorized batch of MACHINES (see MachineBatch). */
+    VectorMachineBatch(Machine[] machines) {
+        super(machines, SPECIES.length());
+        _index = new int[SPECIES.length()];
+    }
+
+    @Override
+    void convertSteps(int[] interleaved, int[] length, int steps) {
+        int w = width();
+        for (int t = 0, row = 0; t < steps; t += 1, row += w) {
+            for (int b = 0; b < w; b += SPECIES.length()) {
+                VectorMask<Integer> active =
+                    IntVector.fromArray(SPECIES, length, b)
+                    .compare(VectorOperators.GT, t);
+                if (active.anyTrue()) {
+                    advance(b, active);
+                    scramble(b, interleaved, row + b);
+                }
+            }
+        }
+    }
+
+    /** Advance the rotors of the lanes from B on that are set in ACTIVE,
+     *  as Machine.advanceRotors would. */
+    private void advance(int b, VectorMask<Integer> active) {
+        int w = width(), last = slots() - 1, size = size();
+        VectorMask<Integer> acted = SPECIES.maskAll(false);
+        for (int i = 0, k = b; i <= last; i += 1, k += w) {
+            VectorMask<Integer> rotates =
+                IntVector.fromArray(SPECIES, _rotates, k)
+                .compare(VectorOperators.NE, 0);
+            VectorMask<Integer> engaged;
+            if (!rotates.anyTrue()) {
+                engaged = rotates;
+            } else if (i < last) {
+                IntVector notch =
+                    gather(_notches,
+                           IntVector.fromArray(SPECIES, _notchBase, k + w)
+                           .add(IntVector.fromArray(SPECIES, _setting,
+                                                    k + w)));
+                engaged = rotates.and(notch.compare(VectorOperators.NE, 0));
+            } else {
+                engaged = active;
+            }
+            VectorMask<Integer> acts = engaged.andNot(acted);
+            VectorMask<Integer> moves = acts.or(acted).and(rotates)
+                .and(active);
+            if (moves.anyTrue()) {
+                IntVector setting = IntVector.fromArray(SPECIES, _setting, k);
+                IntVector next = setting.add(1);
+                next = next.blend(0, next.compare(VectorOperators.EQ, size));
+                setting = setting.blend(next, moves);
+                setting.intoArray(_setting, k);
+                IntVector.fromArray(SPECIES, _base, k).add(setting.mul(size))
+                    .intoArray(_row, k);
+            }
+            acted = acts;
+        }
+    }
+
+    /** Replace the characters of the lanes from B, at index START of
+     *  INTERLEAVED, by their conversions. */
+    private void scramble(int b, int[] interleaved, int start) {
+        int w = width(), last = slots() - 1;
+        IntVector plugBase = IntVector.fromArray(SPECIES, _plugBase, b);
+        IntVector c = IntVector.fromArray(SPECIES, interleaved, start);
+        c = gather(_plugForward, c.add(plugBase));
+        for (int k = last * w + b; k >= 0; k -= w) {
+            c = gather(_forward, c.add(IntVector.fromArray(SPECIES, _row, k)));
+        }
+        for (int k = w + b; k <= last * w + b; k += w) {
+            c = gather(_backward,
+                       c.add(IntVector.fromArray(SPECIES, _row, k)));
+        }
+        c = gather(_plugInverse, c.add(plugBase));
+        c.intoArray(interleaved, start);
+    }
+
+    /** Return the entries of TABLE at the offsets in INDEX. */
+    private IntVector gather(int[] table, IntVector index) {
+        index.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0);
+    }
+
+    /** Shape of the vectors used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Scratch space holding the offsets of a gather. */
+    private final int[] _index;
+}